@@ -0,0 +1,17 @@
+#!/bin/bash
+
+set -Eeuo pipefail
+
+./compile.sh
+
+source $HOME/.sdkman/bin/sdkman-init.sh && sdk env
+
+benchmarks=("$@")
+if [ ${#benchmarks[@]} -eq 0 ]; then
+  benchmarks=(program.ProgramBenchmark DslBenchmark)
+fi
+
+for benchmark in "${benchmarks[@]}"; do
+  echo "== $benchmark"
+  java --enable-preview -cp bin "$benchmark"
+done
@@ -5,6 +5,16 @@ import java.util.function.Function;
  */
 sealed interface ConsoleCps {
 
+  interface Service {
+    default void writeLine(String line) {
+      System.console().println(line);
+    }
+
+    default String readLine() {
+      return System.console().readLine();
+    }
+  }
+
   record WriteLine(String line, ConsoleCps next) implements ConsoleCps {}
   record ReadLine(Function<String, ConsoleCps> next) implements ConsoleCps {}
   record End() implements ConsoleCps {}
@@ -34,17 +44,51 @@ sealed interface ConsoleCps {
   }
 
   default String eval() {
-    return switch (this) {
-      case WriteLine(var line, var next) -> {
-        System.console().println(line);
-        yield next.eval();
-      }
-      case ReadLine(var next) -> {
-        var line = System.console().readLine();
-        yield next.apply(line).eval();
+    return eval(new Service() {});
+  }
+
+  /*
+   * walks the continuations in a loop, so the stack doesn't grow with the
+   * program, and writes a run of WriteLine as a single line block. The block
+   * buffer is only created for the first run, sized to fit it, and reused.
+   */
+  default String eval(Service service) {
+    StringBuilder pending = null;
+    var current = this;
+    while (true) {
+      switch (current) {
+        case WriteLine(var line, WriteLine next) -> {
+          if (pending == null) {
+            pending = new StringBuilder(length(current));
+          }
+          pending.append(line).append('\n');
+          current = next;
+        }
+        case WriteLine(var line, var next) -> {
+          if (pending == null || pending.isEmpty()) {
+            service.writeLine(line);
+          } else {
+            service.writeLine(pending.append(line).toString());
+            pending.setLength(0);
+          }
+          current = next;
+        }
+        case ReadLine(var next) -> current = next.apply(service.readLine());
+        case End _ -> {
+          return null;
+        }
       }
-      case End _ -> null;
-    };
+    }
+  }
+
+  // of the block a run of WriteLine is joined into
+  private static int length(ConsoleCps run) {
+    var length = -1;
+    while (run instanceof WriteLine(var line, var next)) {
+      length += line.length() + 1;
+      run = next;
+    }
+    return length;
   }
 
   static void main() {
@@ -5,6 +5,16 @@ import java.util.function.Function;
  */
 sealed interface ConsoleDsl {
 
+  interface Service {
+    default void writeLine(String line) {
+      System.console().println(line);
+    }
+
+    default String readLine() {
+      return System.console().readLine();
+    }
+  }
+
   record WriteLine(String line) implements ConsoleDsl {}
   record ReadLine() implements ConsoleDsl {}
   record AndThen(ConsoleDsl current, Function<String, ConsoleDsl> next) implements ConsoleDsl {};
@@ -34,13 +44,17 @@ sealed interface ConsoleDsl {
   }
 
   default String eval() {
+    return eval(new Service() {});
+  }
+
+  default String eval(Service service) {
     return switch (this) {
       case WriteLine(var line) -> {
-        System.console().println(line);
+        service.writeLine(line);
         yield null;
       }
-      case ReadLine _ -> System.console().readLine();
-      case AndThen(var current, var next) -> next.apply(current.eval()).eval();
+      case ReadLine _ -> service.readLine();
+      case AndThen(var current, var next) -> next.apply(current.eval(service)).eval(service);
     };
   }
 
@@ -0,0 +1,125 @@
+import static java.util.Map.entry;
+
+import bench.Bench;
+
+final class DslBenchmark {
+
+  static final class Stub implements ConsoleDsl.Service, ConsoleCps.Service {
+
+    private int written;
+
+    @Override
+    public void writeLine(String line) {
+      written += line.length();
+    }
+
+    @Override
+    public String readLine() {
+      return "Toni";
+    }
+  }
+
+  static final class GameStub extends GameDsl.Context {
+
+    private boolean started;
+
+    @Override
+    void writeLine(String line) {
+      // discard output
+    }
+
+    @Override
+    String readLine() {
+      if (!started) {
+        started = true;
+        return "y";
+      }
+      return String.valueOf(get());
+    }
+  }
+
+  static final String[] MENU = {
+    "Menu", "1. Create", "2. List", "3. Find", "4. Delete", "5. Clear", "6. Completed", "7. Exit"
+  };
+
+  static ConsoleDsl dslScript(int menus) {
+    var next = ConsoleDsl.writeLine("Bye!");
+    for (int i = 0; i < menus; i++) {
+      var tail = next;
+      var menu = ConsoleDsl.writeLine(MENU[0]);
+      for (int j = 1; j < MENU.length; j++) {
+        menu = menu.andThen(ConsoleDsl.writeLine(MENU[j]));
+      }
+      next = menu.andThen(ConsoleDsl.readLine()).andThen(_ -> tail);
+    }
+    return next;
+  }
+
+  static ConsoleCps cpsScript(int menus) {
+    var next = ConsoleCps.writeLine("Bye!");
+    for (int i = 0; i < menus; i++) {
+      var tail = next;
+      next = ConsoleCps.readLine(_ -> tail);
+      for (int j = MENU.length - 1; j >= 0; j--) {
+        next = ConsoleCps.writeLine(MENU[j], next);
+      }
+    }
+    return next;
+  }
+
+  static String stackSafety(String name, Runnable eval) {
+    try {
+      eval.run();
+      return name + ": ok";
+    } catch (StackOverflowError e) {
+      return name + ": StackOverflowError";
+    }
+  }
+
+  static void main() {
+    var stub = new Stub();
+
+    var dsl = ConsoleDsl.prompt("What's your name?").andThen(ConsoleDsl::sayHello);
+    Bench.run("ConsoleDsl script", () -> dsl.eval(stub));
+
+    var cps = ConsoleCps.prompt("What's your name?", ConsoleCps::sayHello);
+    Bench.run("ConsoleCps script", () -> cps.eval(stub));
+
+    for (var menus : new int[] { 1, 100 }) {
+      var dslMenus = dslScript(menus);
+      Bench.run("ConsoleDsl " + menus + " menus", () -> dslMenus.eval(stub));
+      var cpsMenus = cpsScript(menus);
+      Bench.run("ConsoleCps " + menus + " menus", () -> cpsMenus.eval(stub));
+    }
+    var longDsl = dslScript(1_000_000);
+    System.console().println(stackSafety("ConsoleDsl 1M menus", () -> longDsl.eval(stub)));
+    var longCps = cpsScript(1_000_000);
+    System.console().println(stackSafety("ConsoleCps 1M menus", () -> longCps.eval(stub)));
+
+    var game = GameDsl.prompt("Do you want to play a game? (y/n)").andThen(GameDsl::playOrExit);
+    Bench.run("GameDsl eval", () -> game.eval(new GameStub()));
+
+    var json = JsonDsl.array(
+        JsonDsl.object(
+          entry("name", JsonDsl.string("Toni")),
+          entry("age", JsonDsl.number(46)),
+          entry("old", JsonDsl.JsonBoolean.TRUE)),
+        JsonDsl.object(
+          entry("name", JsonDsl.string("Baby")),
+          entry("age", JsonDsl.JsonNull.NULL),
+          entry("old", JsonDsl.JsonBoolean.FALSE)));
+    Bench.run("JsonDsl asString", json::asString);
+
+    var page = new HtmlDsl.Html(
+        new HtmlDsl.Head("Example"),
+        new HtmlDsl.Body(new HtmlDsl.H1("Hello World!"), new HtmlDsl.H1("Bye World!")));
+    Bench.run("HtmlDsl toHtml", page::toHtml);
+
+    var people = new SqlDsl.People();
+    var query = SqlDsl.select(people.NAME, people.AGE)
+        .from(people)
+        .where(SqlDsl.gt(people.AGE, 18))
+        .sorting(SqlDsl.asc(people.AGE));
+    Bench.run("SqlDsl toSql", query::toSql);
+  }
+}
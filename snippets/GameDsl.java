@@ -66,10 +66,10 @@ sealed interface GameDsl<T> {
   default T eval(Context context) {
     return (T) switch (this) {
       case WriteLine(var line) -> {
-        System.console().println(line);
+        context.writeLine(line);
         yield null;
       }
-      case ReadLine _ -> System.console().readLine();
+      case ReadLine _ -> context.readLine();
       case NextInt(int bound) -> ThreadLocalRandom.current().nextInt(bound);
       case GetValue _ -> context.get();
       case SetValue(var value) -> {
@@ -85,11 +85,13 @@ sealed interface GameDsl<T> {
     return writeLine(question).andThen(readLine());
   }
 
-  static GameDsl<Void> loop() {
-    return prompt("Enter a number between 0 and 9")
+  GameDsl<Void> LOOP = prompt("Enter a number between 0 and 9")
       .map(Integer::parseInt)
       .andThen(GameDsl::checkNumber)
       .andThen(GameDsl::winOrContinue);
+
+  static GameDsl<Void> loop() {
+    return LOOP;
   }
 
   static GameDsl<Void> winOrContinue(boolean answer) {
@@ -113,10 +115,18 @@ sealed interface GameDsl<T> {
     program.eval(new Context());
   }
 
-  final class Context {
+  class Context {
 
     private int value;
 
+    void writeLine(String line) {
+      System.console().println(line);
+    }
+
+    String readLine() {
+      return System.console().readLine();
+    }
+
     void set(int value) {
       this.value = value;
     }
@@ -0,0 +1,84 @@
+import static java.util.Map.entry;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import bench.Bench;
+
+/*
+ * the document repeats one chunk of distinct objects, so it can be 100 MB of
+ * JSON without 100 MB worth of tree on the heap
+ */
+final class JsonBenchmark {
+
+  static final int CHUNK = 1_000;
+
+  static JsonDsl document(int megabytes) {
+    var objects = new ArrayList<JsonDsl>(CHUNK);
+    for (int i = 0; i < CHUNK; i++) {
+      objects.add(JsonDsl.object(
+          entry("id", JsonDsl.number(i)),
+          entry("title", JsonDsl.string("todo number " + i + " with \"quotes\", tabs\tand ñ")),
+          entry("done", i % 2 == 0 ? JsonDsl.JsonBoolean.TRUE : JsonDsl.JsonBoolean.FALSE),
+          entry("score", JsonDsl.number(i / 8.0)),
+          entry("owner", JsonDsl.JsonNull.NULL),
+          entry("tags", JsonDsl.array(JsonDsl.string("work"), JsonDsl.string("urgent")))));
+    }
+    var chunk = new JsonDsl.JsonArray(objects);
+    var chunkBytes = chunk.asString().length();
+    return new JsonDsl.JsonArray(Collections.nCopies(megabytes * 1024 * 1024 / chunkBytes, chunk));
+  }
+
+  static void main(String... args) throws IOException {
+    var json = document(args.length > 0 ? Integer.parseInt(args[0]) : 100);
+    var size = json.asString().length();
+    System.console().println(String.format("document of %.1f MB", size / (1024.0 * 1024)));
+
+    Bench.run("JsonDsl asString", json::asString);
+
+    var builder = new StringBuilder(size);
+    Bench.run("JsonWriter to a reused StringBuilder", () -> {
+      builder.setLength(0);
+      try {
+        JsonWriter.write(json, builder);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return builder;
+    });
+
+    var out = OutputStream.nullOutputStream();
+    Bench.run("JsonWriter to an OutputStream", () -> {
+      try {
+        JsonWriter.write(json, out);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return out;
+    });
+
+    var buffer = ByteBuffer.allocateDirect(size + size / 8);
+    Bench.run("JsonWriter to a direct ByteBuffer", () -> {
+      JsonWriter.write(json, buffer.clear());
+      return buffer;
+    });
+
+    var bytes = new byte[buffer.flip().remaining()];
+    buffer.get(bytes);
+    Bench.run("JsonParser parse", () -> JsonParser.parse(bytes));
+    Bench.run("JsonParser index", () -> JsonParser.index(bytes));
+    Bench.run("JsonParser index and read the last chunk's ids", () -> {
+      var chunks = JsonParser.index(bytes);
+      var last = chunks.get(chunks.size() - 1).orElseThrow();
+      long sum = 0;
+      for (int i = 0; i < CHUNK; i++) {
+        sum += last.get(i).flatMap(object -> object.get("id")).orElseThrow().asNumber().longValue();
+      }
+      return sum;
+    });
+  }
+}
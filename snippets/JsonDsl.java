@@ -1,9 +1,8 @@
 import static java.util.Map.entry;
-import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Stream;
 
 sealed interface JsonDsl {
 
@@ -24,21 +23,13 @@ sealed interface JsonDsl {
   record JsonArray(List<JsonDsl> value) implements JsonDsl {}
 
   default String asString() {
-    return switch (this) {
-      case JsonNull _ -> "null";
-      case JsonBoolean b -> switch (b) {
-        case TRUE -> "true";
-        case FALSE -> "false";
-      };
-      case JsonString(var value) -> "\"" + value + "\"";
-      case JsonNumber(var value) -> String.valueOf(value);
-      case JsonObject(var map) -> map.entrySet().stream()
-          .map(entry -> "\"" + entry.getKey() + "\":" + entry.getValue().asString())
-          .collect(joining(",", "{", "}"));
-      case JsonArray(var array) -> array.stream()
-          .map(JsonDsl::asString)
-          .collect(joining(",", "[", "]"));
-    };
+    var out = new StringBuilder();
+    try {
+      JsonWriter.write(this, out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toString();
   }
 
   static JsonDsl string(String value) {
@@ -55,8 +46,13 @@ sealed interface JsonDsl {
 
   @SafeVarargs
   static JsonDsl object(Map.Entry<String, JsonDsl>... entries) {
-    return new JsonObject(Stream.of(entries)
-        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    var fields = new JsonFields.Builder();
+    for (var entry : entries) {
+      if (fields.put(entry.getKey(), entry.getValue()) != null) {
+        throw new IllegalStateException("Duplicate key " + entry.getKey());
+      }
+    }
+    return new JsonObject(fields.build());
   }
 
   static void main() {
@@ -0,0 +1,210 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/*
+ * https://v8.dev/blog/fast-properties
+ *
+ * the fields of a small JSON object: its values in a flat array and its keys
+ * in a Shape shared by every object that has the same keys in the same order.
+ * Shapes form a tree of transitions from the empty shape, so building an
+ * object only walks the tree, and lookups scan at most MAX_FIELDS keys.
+ * Bigger objects are hashed in a LinkedHashMap instead.
+ *
+ * The tree is never pruned and keys may come from untrusted input, so it
+ * holds at most MAX_SHAPES shapes; past that, objects get shapes of their
+ * own that are collected with them.
+ */
+final class JsonFields extends AbstractMap<String, JsonDsl> {
+
+  static final int MAX_FIELDS = 8;
+
+  static final int MAX_SHAPES = 4096;
+
+  // wider fan-outs are usually data used as keys, so their shapes are not kept
+  private static final int MAX_TRANSITIONS = 64;
+
+  private static final AtomicInteger SHAPES = new AtomicInteger();
+
+  private static final JsonDsl[] NO_VALUES = {};
+
+  static final class Shape {
+
+    private static final Shape EMPTY = new Shape(new String[0], true);
+
+    private final String[] keys;
+    private final int[] hashes;
+    // null when the shape is not in the tree
+    private final Map<String, Shape> transitions;
+
+    private Shape(String[] keys, boolean shared) {
+      this.keys = keys;
+      this.transitions = shared ? new ConcurrentHashMap<>() : null;
+      this.hashes = new int[keys.length];
+      for (int i = 0; i < keys.length; i++) {
+        hashes[i] = keys[i].hashCode();
+      }
+    }
+
+    private Shape with(String key) {
+      var shape = transitions == null ? null : transitions.get(key);
+      if (shape != null) {
+        return shape;
+      }
+      var keys = Arrays.copyOf(this.keys, this.keys.length + 1);
+      keys[this.keys.length] = key;
+      if (transitions == null || transitions.size() >= MAX_TRANSITIONS || SHAPES.get() >= MAX_SHAPES) {
+        return new Shape(keys, false);
+      }
+      return transitions.computeIfAbsent(key, _ -> {
+        SHAPES.incrementAndGet();
+        return new Shape(keys, true);
+      });
+    }
+
+    // the same key instance matches by reference, others by hash and then equals
+    private int indexOf(Object key) {
+      if (key == null) {
+        return -1;
+      }
+      var hash = key.hashCode();
+      for (int i = 0; i < keys.length; i++) {
+        if (keys[i] == key || hashes[i] == hash && keys[i].equals(key)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    int size() {
+      return keys.length;
+    }
+  }
+
+  static int sharedShapes() {
+    return SHAPES.get();
+  }
+
+  /*
+   * a later value for the same key replaces the earlier one, in place
+   */
+  static final class Builder {
+
+    private Shape shape = Shape.EMPTY;
+    private JsonDsl[] values;
+    private LinkedHashMap<String, JsonDsl> map;
+
+    JsonDsl put(String key, JsonDsl value) {
+      Objects.requireNonNull(key);
+      Objects.requireNonNull(value);
+      if (map != null) {
+        return map.put(key, value);
+      }
+      var index = shape.indexOf(key);
+      if (index >= 0) {
+        var previous = values[index];
+        values[index] = value;
+        return previous;
+      }
+      var size = shape.size();
+      if (size == MAX_FIELDS) {
+        map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+          map.put(shape.keys[i], values[i]);
+        }
+        return map.put(key, value);
+      }
+      if (values == null) {
+        values = new JsonDsl[MAX_FIELDS];
+      }
+      values[size] = value;
+      shape = shape.with(key);
+      return null;
+    }
+
+    Map<String, JsonDsl> build() {
+      if (map != null) {
+        return Collections.unmodifiableMap(map);
+      }
+      var size = shape.size();
+      return new JsonFields(shape, size == 0 ? NO_VALUES : Arrays.copyOf(values, size));
+    }
+  }
+
+  private final Shape shape;
+  private final JsonDsl[] values;
+
+  private JsonFields(Shape shape, JsonDsl[] values) {
+    this.shape = shape;
+    this.values = values;
+  }
+
+  Shape shape() {
+    return shape;
+  }
+
+  @Override
+  public int size() {
+    return values.length;
+  }
+
+  @Override
+  public JsonDsl get(Object key) {
+    var index = shape.indexOf(key);
+    return index < 0 ? null : values[index];
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return shape.indexOf(key) >= 0;
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super JsonDsl> action) {
+    for (int i = 0; i < values.length; i++) {
+      action.accept(shape.keys[i], values[i]);
+    }
+  }
+
+  @Override
+  public Set<Entry<String, JsonDsl>> entrySet() {
+    return new AbstractSet<>() {
+      @Override
+      public int size() {
+        return values.length;
+      }
+
+      @Override
+      public Iterator<Entry<String, JsonDsl>> iterator() {
+        return new Iterator<>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < values.length;
+          }
+
+          @Override
+          public Entry<String, JsonDsl> next() {
+            if (next == values.length) {
+              throw new NoSuchElementException();
+            }
+            var entry = Map.entry(shape.keys[next], values[next]);
+            next++;
+            return entry;
+          }
+        };
+      }
+    };
+  }
+}
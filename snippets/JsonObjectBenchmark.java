@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import bench.Bench;
+
+/*
+ * the objects of JsonBenchmark, with shared values so only the maps count
+ */
+final class JsonObjectBenchmark {
+
+  static final String[] KEYS = { "id", "title", "done", "score", "owner", "tags" };
+  static final JsonDsl VALUE = JsonDsl.string("value");
+
+  static Map<String, JsonDsl> hashMap(String[] keys) {
+    var map = new HashMap<String, JsonDsl>();
+    for (var key : keys) {
+      map.put(key, VALUE);
+    }
+    return map;
+  }
+
+  static Map<String, JsonDsl> linkedHashMap(String[] keys) {
+    var map = new LinkedHashMap<String, JsonDsl>();
+    for (var key : keys) {
+      map.put(key, VALUE);
+    }
+    return map;
+  }
+
+  static Map<String, JsonDsl> jsonFields(String[] keys) {
+    var fields = new JsonFields.Builder();
+    for (var key : keys) {
+      fields.put(key, VALUE);
+    }
+    return fields.build();
+  }
+
+  interface Factory {
+    Map<String, JsonDsl> create(String[] keys);
+  }
+
+  static long usedHeap() {
+    var runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  // keys are copied, as a parser would decode them, so sharing them in shapes is measured too
+  static List<JsonDsl> objects(int count, Factory factory) {
+    var objects = new ArrayList<JsonDsl>(count);
+    for (int i = 0; i < count; i++) {
+      var keys = new String[KEYS.length];
+      for (int k = 0; k < keys.length; k++) {
+        keys[k] = new String(KEYS[k]);
+      }
+      objects.add(new JsonDsl.JsonObject(factory.create(keys)));
+    }
+    return objects;
+  }
+
+  static void footprint(String name, int count, Factory factory) {
+    var before = usedHeap();
+    var objects = objects(count, factory);
+    var used = usedHeap() - before;
+    System.console().println(String.format("%-32s %10d objects %8d MB %6.1f B/object",
+        name, count, used >> 20, (double) used / count));
+    if (objects.size() != count) {
+      throw new IllegalStateException();
+    }
+  }
+
+  static Supplier<Integer> lookups(List<JsonDsl> objects, String key) {
+    return () -> {
+      var found = 0;
+      for (var object : objects) {
+        if (((JsonDsl.JsonObject) object).value().get(key) != null) {
+          found++;
+        }
+      }
+      return found;
+    };
+  }
+
+  static String[] wide(int fields) {
+    var keys = new String[fields];
+    for (int i = 0; i < fields; i++) {
+      keys[i] = "field" + i;
+    }
+    return keys;
+  }
+
+  static void main(String... args) {
+    var count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    footprint("HashMap", count, JsonObjectBenchmark::hashMap);
+    footprint("LinkedHashMap", count, JsonObjectBenchmark::linkedHashMap);
+    footprint("JsonFields", count, JsonObjectBenchmark::jsonFields);
+
+    var factories = Map.<String, Factory>of(
+        "HashMap", JsonObjectBenchmark::hashMap,
+        "LinkedHashMap", JsonObjectBenchmark::linkedHashMap,
+        "JsonFields", JsonObjectBenchmark::jsonFields);
+    for (var name : List.of("HashMap", "LinkedHashMap", "JsonFields")) {
+      var objects = objects(1_000, factories.get(name));
+      Bench.run(name + " get first key", lookups(objects, "id"));
+      Bench.run(name + " get last key", lookups(objects, "tags"));
+      Bench.run(name + " get decoded key", lookups(objects, new String("tags")));
+      Bench.run(name + " get missing key", lookups(objects, "missing"));
+    }
+
+    // above MAX_FIELDS the builder hashes
+    var keys = wide(2 * JsonFields.MAX_FIELDS);
+    var objects = new ArrayList<JsonDsl>();
+    for (int i = 0; i < 1_000; i++) {
+      objects.add(new JsonDsl.JsonObject(jsonFields(keys)));
+    }
+    Bench.run("JsonFields " + keys.length + " fields get last key", lookups(objects, keys[keys.length - 1]));
+  }
+}
@@ -0,0 +1,539 @@
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Optional;
+
+/*
+ * https://www.rfc-editor.org/rfc/rfc8259
+ *
+ * parse builds the whole JsonDsl tree. index only records where every value
+ * starts and where it ends, so a Cursor can walk the document and decode
+ * just the values it is asked for (https://arxiv.org/abs/1902.08318).
+ */
+final class JsonParser {
+
+  static final int MAX_DEPTH = 1_000;
+
+  private final byte[] input;
+  private final int limit;
+  private int position;
+
+  private JsonParser(byte[] input, int position, int limit) {
+    this.input = input;
+    this.position = position;
+    this.limit = limit;
+  }
+
+  static JsonDsl parse(byte[] input) {
+    return parse(input, 0, input.length);
+  }
+
+  static JsonDsl parse(ByteBuffer input) {
+    if (input.hasArray()) {
+      var offset = input.arrayOffset();
+      return parse(input.array(), offset + input.position(), offset + input.limit());
+    }
+    return parse(bytes(input));
+  }
+
+  private static JsonDsl parse(byte[] input, int position, int limit) {
+    var parser = new JsonParser(input, position, limit);
+    var value = parser.value(0);
+    parser.skipWhitespace();
+    if (parser.position != limit) {
+      throw parser.error("end of input");
+    }
+    return value;
+  }
+
+  // heap arrays are indexed without the bounds and liveness checks of ByteBuffer.get
+  private static byte[] bytes(ByteBuffer input) {
+    var bytes = new byte[input.remaining()];
+    input.get(input.position(), bytes);
+    return bytes;
+  }
+
+  private JsonDsl value(int depth) {
+    if (depth > MAX_DEPTH) {
+      throw error("at most " + MAX_DEPTH + " nested values");
+    }
+    skipWhitespace();
+    return switch (peek()) {
+      case '{' -> object(depth);
+      case '[' -> array(depth);
+      case '"' -> new JsonDsl.JsonString(string());
+      case 't' -> literal("true", JsonDsl.JsonBoolean.TRUE);
+      case 'f' -> literal("false", JsonDsl.JsonBoolean.FALSE);
+      case 'n' -> literal("null", JsonDsl.JsonNull.NULL);
+      default -> new JsonDsl.JsonNumber(number());
+    };
+  }
+
+  private JsonDsl object(int depth) {
+    position++;
+    var fields = new JsonFields.Builder();
+    skipWhitespace();
+    if (peek() == '}') {
+      position++;
+      return new JsonDsl.JsonObject(fields.build());
+    }
+    while (true) {
+      skipWhitespace();
+      if (peek() != '"') {
+        throw error("a key");
+      }
+      var key = string();
+      skipWhitespace();
+      expect(':');
+      fields.put(key, value(depth + 1));
+      skipWhitespace();
+      if (next() == '}') {
+        return new JsonDsl.JsonObject(fields.build());
+      }
+      position--;
+      expect(',');
+    }
+  }
+
+  private JsonDsl array(int depth) {
+    position++;
+    var list = new ArrayList<JsonDsl>();
+    skipWhitespace();
+    if (peek() == ']') {
+      position++;
+      return new JsonDsl.JsonArray(list);
+    }
+    while (true) {
+      list.add(value(depth + 1));
+      skipWhitespace();
+      if (next() == ']') {
+        return new JsonDsl.JsonArray(list);
+      }
+      position--;
+      expect(',');
+    }
+  }
+
+  private JsonDsl literal(String literal, JsonDsl value) {
+    for (int i = 0; i < literal.length(); i++) {
+      if (position >= limit || input[position] != literal.charAt(i)) {
+        throw error(literal);
+      }
+      position++;
+    }
+    return value;
+  }
+
+  /*
+   * ASCII without escapes, the common case, is decoded straight from the input
+   */
+  private String string() {
+    var start = ++position;
+    while (true) {
+      var b = next();
+      if (b == '"') {
+        return decode(start, position - 1 - start);
+      }
+      if (b == '\\' || b >= 0 && b < 0x20) {
+        break;
+      }
+    }
+    position = start;
+    var out = new StringBuilder();
+    while (true) {
+      var run = position;
+      byte b;
+      while ((b = next()) != '"' && b != '\\') {
+        if (b >= 0 && b < 0x20) {
+          position--;
+          throw error("no control chars in strings");
+        }
+      }
+      out.append(decode(run, position - 1 - run));
+      if (b == '"') {
+        return out.toString();
+      }
+      var escape = next();
+      switch (escape) {
+        case '"', '\\', '/' -> out.append((char) escape);
+        case 'b' -> out.append('\b');
+        case 'f' -> out.append('\f');
+        case 'n' -> out.append('\n');
+        case 'r' -> out.append('\r');
+        case 't' -> out.append('\t');
+        case 'u' -> {
+          var code = 0;
+          for (int i = 0; i < 4; i++) {
+            var digit = Character.digit(next(), 16);
+            if (digit < 0) {
+              position--;
+              throw error("a hex digit");
+            }
+            code = code << 4 | digit;
+          }
+          out.append((char) code);
+        }
+        default -> {
+          position--;
+          throw error("an escape");
+        }
+      }
+    }
+  }
+
+  private String decode(int start, int length) {
+    return new String(input, start, length, UTF_8);
+  }
+
+  /*
+   * Integer or Long when the number fits, like JsonDsl.number(46), then
+   * BigInteger, and Double for fractions and exponents
+   */
+  private Number number() {
+    var start = position;
+    var negative = peek() == '-';
+    if (negative) {
+      position++;
+    }
+    var digits = position;
+    // accumulated as a negative number, whose range also holds Long.MIN_VALUE
+    long value = 0;
+    var overflow = false;
+    while (position < limit && isDigit(input[position])) {
+      var digit = input[position++] - '0';
+      overflow |= value < (Long.MIN_VALUE + digit) / 10;
+      value = value * 10 - digit;
+    }
+    if (position == digits || input[digits] == '0' && position - digits > 1) {
+      position = start;
+      throw error("a value");
+    }
+    var integral = true;
+    if (position < limit && input[position] == '.') {
+      integral = false;
+      position++;
+      fraction();
+    }
+    if (position < limit && (input[position] | 0x20) == 'e') {
+      integral = false;
+      position++;
+      if (position < limit && (input[position] == '+' || input[position] == '-')) {
+        position++;
+      }
+      fraction();
+    }
+    if (!integral) {
+      var text = decode(start, position - start);
+      var number = Double.parseDouble(text);
+      return Double.isInfinite(number) ? new BigDecimal(text) : number;
+    }
+    if (overflow || !negative && value == Long.MIN_VALUE) {
+      return new BigInteger(decode(start, position - start));
+    }
+    value = negative ? value : -value;
+    return value == (int) value ? (Number) (int) value : (Number) value;
+  }
+
+  private void fraction() {
+    var digits = position;
+    while (position < limit && isDigit(input[position])) {
+      position++;
+    }
+    if (position == digits) {
+      throw error("a digit");
+    }
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private void skipWhitespace() {
+    while (position < limit) {
+      switch (input[position]) {
+        case ' ', '\t', '\n', '\r' -> position++;
+        default -> {
+          return;
+        }
+      }
+    }
+  }
+
+  private byte peek() {
+    if (position >= limit) {
+      throw error("more input");
+    }
+    return input[position];
+  }
+
+  private byte next() {
+    var b = peek();
+    position++;
+    return b;
+  }
+
+  private void expect(char c) {
+    if (peek() != c) {
+      throw error("'" + c + "'");
+    }
+    position++;
+  }
+
+  private IllegalArgumentException error(String expected) {
+    var found = position < limit ? "'" + (char) (input[position] & 0xFF) + "'" : "end of input";
+    return new IllegalArgumentException("expected " + expected + " but found " + found + " at " + position);
+  }
+
+  /*
+   * the offset where every value (and key) starts, in document order, and
+   * the token that follows it, so whole subtrees can be skipped. Strings are
+   * only checked for their closing quote and scalars are not validated until
+   * they are read, but separators and the end of the document are.
+   */
+  record Index(byte[] input, int limit, int[] starts, int[] skips) {
+
+    Cursor root() {
+      return new Cursor(this, 0);
+    }
+  }
+
+  static Cursor index(byte[] input) {
+    return index(input, 0, input.length);
+  }
+
+  static Cursor index(ByteBuffer input) {
+    if (input.hasArray()) {
+      var offset = input.arrayOffset();
+      return index(input.array(), offset + input.position(), offset + input.limit());
+    }
+    return index(bytes(input));
+  }
+
+  // what the index accepts next; the FIRST_ states may also close the container they opened.
+  // ints rather than an enum keep the scan within 10% of the unvalidated one
+  private static final int VALUE = 0;
+  private static final int FIRST_VALUE = 1;
+  private static final int KEY = 2;
+  private static final int FIRST_KEY = 3;
+  private static final int COLON = 4;
+  private static final int NEXT = 5;
+
+  private static Cursor index(byte[] input, int position, int limit) {
+    var starts = new int[1024];
+    var skips = new int[1024];
+    var open = new int[64];
+    var depth = 0;
+    var tokens = 0;
+    var expect = VALUE;
+    for (int i = position; i < limit; i++) {
+      var b = input[i];
+      switch (b) {
+        case ' ', '\t', '\n', '\r' -> {
+          continue;
+        }
+        case ',' -> {
+          if (expect != NEXT || depth == 0) {
+            throw unexpected(input, i);
+          }
+          expect = input[starts[open[depth - 1]]] == '{' ? KEY : VALUE;
+          continue;
+        }
+        case ':' -> {
+          if (expect != COLON) {
+            throw unexpected(input, i);
+          }
+          expect = VALUE;
+          continue;
+        }
+        case '}', ']' -> {
+          if (depth == 0 || input[starts[open[depth - 1]]] != (b == '}' ? '{' : '[')) {
+            throw new IllegalArgumentException("unbalanced '" + (char) b + "' at " + i);
+          }
+          if (expect != NEXT && expect != (b == '}' ? FIRST_KEY : FIRST_VALUE)) {
+            throw unexpected(input, i);
+          }
+          skips[open[--depth]] = tokens;
+          expect = NEXT;
+          continue;
+        }
+        default -> {
+          var key = expect == KEY || expect == FIRST_KEY;
+          if (key ? b != '"' : expect != VALUE && expect != FIRST_VALUE) {
+            throw unexpected(input, i);
+          }
+          expect = key ? COLON : NEXT;
+        }
+      }
+      if (tokens == starts.length) {
+        starts = Arrays.copyOf(starts, tokens * 2);
+        skips = Arrays.copyOf(skips, tokens * 2);
+      }
+      starts[tokens] = i;
+      skips[tokens] = tokens + 1;
+      switch (b) {
+        case '{', '[' -> {
+          if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+          }
+          open[depth++] = tokens;
+          expect = b == '{' ? FIRST_KEY : FIRST_VALUE;
+        }
+        case '"' -> {
+          while (true) {
+            if (++i >= limit) {
+              throw new IllegalArgumentException("unterminated string at " + starts[tokens]);
+            }
+            var c = input[i];
+            if (c == '"') {
+              break;
+            }
+            if (c == '\\') {
+              i++;
+            }
+          }
+        }
+        default -> {
+          while (i + 1 < limit && !isDelimiter(input[i + 1])) {
+            i++;
+          }
+        }
+      }
+      tokens++;
+    }
+    if (depth != 0 || expect != NEXT) {
+      throw new IllegalArgumentException("unbalanced or incomplete document");
+    }
+    return new Index(input, limit, starts, skips).root();
+  }
+
+  private static IllegalArgumentException unexpected(byte[] input, int i) {
+    return new IllegalArgumentException("unexpected '" + (char) (input[i] & 0xFF) + "' at " + i);
+  }
+
+  private static boolean isDelimiter(byte b) {
+    return switch (b) {
+      case ' ', '\t', '\n', '\r', ',', ':', '}', ']' -> true;
+      default -> false;
+    };
+  }
+
+  /*
+   * a position in an indexed document; values are parsed when asked for
+   */
+  record Cursor(Index index, int token) {
+
+    private byte first() {
+      return index.input()[index.starts()[token]];
+    }
+
+    boolean isObject() {
+      return first() == '{';
+    }
+
+    boolean isArray() {
+      return first() == '[';
+    }
+
+    boolean isNull() {
+      return first() == 'n';
+    }
+
+    Optional<Cursor> get(String key) {
+      if (!isObject()) {
+        throw new IllegalStateException("not an object");
+      }
+      var end = index.skips()[token];
+      for (int child = token + 1; child + 1 < end; child = index.skips()[child + 1]) {
+        if (keyEquals(child, key)) {
+          return Optional.of(new Cursor(index, child + 1));
+        }
+      }
+      return Optional.empty();
+    }
+
+    Optional<Cursor> get(int position) {
+      if (!isArray()) {
+        throw new IllegalStateException("not an array");
+      }
+      var end = index.skips()[token];
+      var child = token + 1;
+      for (int i = 0; i < position && child < end; i++) {
+        child = index.skips()[child];
+      }
+      return child < end && position >= 0 ? Optional.of(new Cursor(index, child)) : Optional.empty();
+    }
+
+    int size() {
+      var end = index.skips()[token];
+      var step = isObject() ? 1 : 0;
+      var size = 0;
+      for (int child = token + 1; child < end; child = index.skips()[child + step]) {
+        size++;
+      }
+      return size;
+    }
+
+    String asString() {
+      return ((JsonDsl.JsonString) materialize()).value();
+    }
+
+    Number asNumber() {
+      return ((JsonDsl.JsonNumber) materialize()).value();
+    }
+
+    boolean asBoolean() {
+      return materialize() == JsonDsl.JsonBoolean.TRUE;
+    }
+
+    // the index only found where the token starts, so the value must end where the token does
+    JsonDsl materialize() {
+      var parser = new JsonParser(index.input(), index.starts()[token], index.limit());
+      var value = parser.value(0);
+      if (parser.position < parser.limit && !isDelimiter(parser.input[parser.position])) {
+        throw parser.error("the end of the value");
+      }
+      return value;
+    }
+
+    /*
+     * compares ASCII keys without decoding them, and stops at the closing
+     * quote; keys with escapes or expected keys with non-ASCII chars are
+     * decoded and compared
+     */
+    private boolean keyEquals(int key, String expected) {
+      var input = index.input();
+      var start = index.starts()[key];
+      if (input[start++] != '"') {
+        throw new IllegalArgumentException("expected a key at " + (start - 1));
+      }
+      for (int i = 0; i < expected.length(); i++) {
+        var c = expected.charAt(i);
+        var b = input[start + i];
+        if (c >= 0x80 || b == '\\') {
+          return new Cursor(index, key).asString().equals(expected);
+        }
+        if (b == '"' || b != c) {
+          return false;
+        }
+      }
+      return input[start + expected.length()] == '"';
+    }
+  }
+
+  static void main() {
+    var text = """
+        {"name": "Toni", "age": 46, "tags": ["a", "b\\u00f1"], "pi": 3.14, "old": true, "next": null}
+        """;
+    var json = parse(text.getBytes(UTF_8));
+    System.console().println(json.asString());
+
+    var root = index(text.getBytes(UTF_8));
+    System.console().println(root.get("age").orElseThrow().asNumber());
+    System.console().println(root.get("tags").flatMap(tags -> tags.get(1)).orElseThrow().asString());
+    System.console().println(root.get("missing").isPresent());
+  }
+}
@@ -0,0 +1,111 @@
+import static check.Checks.check;
+import static check.Checks.fails;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+import check.Checks;
+
+/*
+ * parsing, lazy indexing and writing of JsonDsl values, and the JsonFields shapes
+ */
+final class JsonParserTest {
+
+  static JsonDsl parse(String json) {
+    return JsonParser.parse(json.getBytes(UTF_8));
+  }
+
+  // every distinct key used to add a shape to the global tree, and an interned string
+  static void parsedKeysDoNotGrowTheShapeTree() {
+    for (int i = 0; i < 2 * JsonFields.MAX_SHAPES; i++) {
+      var json = (JsonDsl.JsonObject) parse("{\"a\":1,\"key" + i + "\":2}");
+      check(json.value().get("key" + i) != null, "unshared shapes still find their keys");
+    }
+    check(JsonFields.sharedShapes() <= JsonFields.MAX_SHAPES, "shared shapes are capped");
+  }
+
+  static JsonParser.Cursor index(String json) {
+    return JsonParser.index(json.getBytes(UTF_8));
+  }
+
+  static void rejects(Checks.Action parse, String message) {
+    fails(IllegalArgumentException.class, parse, message);
+  }
+
+  // a closing bracket used to close whatever container was open
+  static void indexRejectsMismatchedBrackets() {
+    rejects(() -> index("[1}"), "array closed by }");
+    rejects(() -> index("{\"a\":1]"), "object closed by ]");
+    rejects(() -> index("[{\"a\":[1}]]"), "nested mismatch");
+    check(index("[{\"a\":[1]}]").get(0).isPresent(), "matched brackets");
+  }
+
+  // the index used to skip separators wherever they were, and anything after the root
+  static void indexRejectsWhatParseRejects() {
+    for (var json : new String[] {
+        "{\"a\" 1 \"b\" 2}", "[1 2]", "{\"a\":1,}", "[,1]", "[1,,2]", "{\"a\",1}", "{1:2}", "{\"a\"}",
+        "[1]:", "1 2", "{} {}", "[1],", "{\"a\":}", ""}) {
+      rejects(() -> parse(json), "parse " + json);
+      rejects(() -> index(json), "index " + json);
+    }
+    check(index(" {\"a\" : [ ] , \"b\" : { } } ").get("b").isPresent(), "whitespace and empty containers");
+    check(index("\"a\"").asString().equals("a"), "scalar root");
+  }
+
+  // -9223372036854775808 used to overflow the positive accumulator into a BigInteger
+  static void longBoundsStayLongs() {
+    check(parse("-9223372036854775808") instanceof JsonDsl.JsonNumber(Long value) && value == Long.MIN_VALUE,
+        "Long.MIN_VALUE");
+    check(parse("9223372036854775807") instanceof JsonDsl.JsonNumber(Long value) && value == Long.MAX_VALUE,
+        "Long.MAX_VALUE");
+    check(parse("9223372036854775808") instanceof JsonDsl.JsonNumber(BigInteger _), "past Long.MAX_VALUE");
+    check(parse("-9223372036854775809") instanceof JsonDsl.JsonNumber(BigInteger _), "past Long.MIN_VALUE");
+    check(parse("-2147483648") instanceof JsonDsl.JsonNumber(Integer _), "Integer.MIN_VALUE");
+  }
+
+  // the index doesn't validate scalars, and reading one used to ignore what followed it
+  static void materializeRejectsTrailingBytes() {
+    rejects(() -> index("[truex]").get(0).orElseThrow().materialize(), "literal with trailing bytes");
+    rejects(() -> index("[1.5.3]").get(0).orElseThrow().asNumber(), "number with trailing bytes");
+    rejects(() -> index("{\"a\":nullnull}").get("a").orElseThrow().materialize(), "null with trailing bytes");
+    check(index("[ 1.5 , true]").get(0).orElseThrow().asNumber().equals(1.5), "whitespace ends a value");
+  }
+
+  // raw key comparison used to read past the closing quote
+  static void keyLookupStaysInsideTheKey() {
+    var json = index("{\"a\":\"b\",\"x\\\"y\":1,\"\\u00f1\":2,\"\\u0061b\":3}");
+    check(json.get("a\":\"b").isEmpty(), "expected key with a quote");
+    check(json.get("a").orElseThrow().asString().equals("b"), "plain key");
+    check(json.get("x\"y").isPresent(), "escaped quote in key");
+    check(json.get("\u00f1").isPresent(), "escaped non-ASCII key");
+    check(json.get("ab").isPresent(), "escaped ASCII key");
+    check(json.get("abc").isEmpty(), "longer expected key");
+  }
+
+  // ByteSink used to write a lone surrogate as '?', and CharSink wrote it raw
+  static void writersEscapeLoneSurrogates() throws IOException {
+    var value = "lone \ud800 and \udc00, pair \ud83d\ude00";
+    var json = JsonDsl.string(value);
+    var chars = new StringBuilder();
+    JsonWriter.write(json, chars);
+    var buffer = ByteBuffer.allocate(64);
+    JsonWriter.write(json, buffer);
+    var bytes = new String(buffer.array(), 0, buffer.position(), UTF_8);
+    check(chars.toString().equals("\"lone \\ud800 and \\udc00, pair \ud83d\ude00\""), "char sink escapes");
+    check(bytes.equals(chars.toString()), "byte sink writes the same");
+    check(parse(bytes).equals(json), "escaped surrogates parse back");
+  }
+
+  static void main() throws IOException {
+    indexRejectsMismatchedBrackets();
+    indexRejectsWhatParseRejects();
+    longBoundsStayLongs();
+    materializeRejectsTrailingBytes();
+    keyLookupStaysInsideTheKey();
+    writersEscapeLoneSurrogates();
+    parsedKeysDoNotGrowTheShapeTree();
+    System.console().println("ok");
+  }
+}
@@ -0,0 +1,354 @@
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+
+/*
+ * https://www.rfc-editor.org/rfc/rfc8259
+ *
+ * writes a JsonDsl tree in a single pass, without recursion and without
+ * building strings on the way: chars go straight to an Appendable and bytes
+ * are encoded to UTF-8 and copied in blocks to a ByteBuffer or OutputStream.
+ */
+final class JsonWriter {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  // the escape for each ASCII char, or 0 when it can be written as is
+  private static final char[] ESCAPES = new char[128];
+
+  static {
+    for (char c = 0; c < 0x20; c++) {
+      ESCAPES[c] = 'u';
+    }
+    ESCAPES['"'] = '"';
+    ESCAPES['\\'] = '\\';
+    ESCAPES['\n'] = 'n';
+    ESCAPES['\r'] = 'r';
+    ESCAPES['\t'] = 't';
+    ESCAPES['\b'] = 'b';
+    ESCAPES['\f'] = 'f';
+  }
+
+  private interface Sink {
+    void raw(char c) throws IOException;
+
+    void raw(String ascii) throws IOException;
+
+    // value is never negative
+    void digits(long value) throws IOException;
+
+    void string(String value) throws IOException;
+  }
+
+  private static final class Frame {
+
+    private final Iterator<?> items;
+    private final char close;
+    private boolean first = true;
+
+    private Frame(Iterator<?> items, char close) {
+      this.items = items;
+      this.close = close;
+    }
+  }
+
+  private JsonWriter() {}
+
+  static void write(JsonDsl json, Appendable out) throws IOException {
+    write(json, new CharSink(out));
+  }
+
+  static void write(JsonDsl json, ByteBuffer out) {
+    try {
+      var sink = new ByteSink(out, null);
+      write(json, sink);
+      sink.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static void write(JsonDsl json, OutputStream out) throws IOException {
+    var sink = new ByteSink(null, out);
+    write(json, sink);
+    sink.flush();
+  }
+
+  private static void write(JsonDsl json, Sink sink) throws IOException {
+    var stack = new ArrayDeque<Frame>();
+    var next = json;
+    while (true) {
+      if (next != null) {
+        var frame = value(next, sink);
+        if (frame != null) {
+          stack.push(frame);
+        }
+        next = null;
+      }
+      var frame = stack.peek();
+      if (frame == null) {
+        return;
+      }
+      if (!frame.items.hasNext()) {
+        sink.raw(frame.close);
+        stack.pop();
+        continue;
+      }
+      if (!frame.first) {
+        sink.raw(',');
+      }
+      frame.first = false;
+      if (frame.close == '}') {
+        var entry = (Map.Entry<?, ?>) frame.items.next();
+        sink.string((String) entry.getKey());
+        sink.raw(':');
+        next = (JsonDsl) entry.getValue();
+      } else {
+        next = (JsonDsl) frame.items.next();
+      }
+    }
+  }
+
+  private static Frame value(JsonDsl next, Sink sink) throws IOException {
+    switch (next) {
+      case JsonDsl.JsonString(var value) -> sink.string(value);
+      case JsonDsl.JsonNumber(var value) -> number(value, sink);
+      case JsonDsl.JsonObject(var map) -> {
+        sink.raw('{');
+        return new Frame(map.entrySet().iterator(), '}');
+      }
+      case JsonDsl.JsonArray(var array) -> {
+        sink.raw('[');
+        return new Frame(array.iterator(), ']');
+      }
+      case JsonDsl.JsonBoolean b -> sink.raw(b == JsonDsl.JsonBoolean.TRUE ? "true" : "false");
+      case JsonDsl.JsonNull _ -> sink.raw("null");
+    }
+    return null;
+  }
+
+  private static void number(Number value, Sink sink) throws IOException {
+    switch (value) {
+      case Integer _, Long _, Short _, Byte _ -> digits(value.longValue(), sink);
+      case Double d when d.isNaN() || d.isInfinite() -> throw new IllegalArgumentException("not a JSON number: " + d);
+      case Float f when f.isNaN() || f.isInfinite() -> throw new IllegalArgumentException("not a JSON number: " + f);
+      default -> sink.raw(value.toString());
+    }
+  }
+
+  private static void digits(long value, Sink sink) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      sink.raw(Long.toString(value));
+      return;
+    }
+    if (value < 0) {
+      sink.raw('-');
+      value = -value;
+    }
+    sink.digits(value);
+  }
+
+  private static int length(long value) {
+    var length = 1;
+    while (value >= 10) {
+      value /= 10;
+      length++;
+    }
+    return length;
+  }
+
+  private static char escape(char c) {
+    return c < ESCAPES.length ? ESCAPES[c] : 0;
+  }
+
+  // a lone surrogate has no UTF-8 encoding, so both sinks escape it instead of dropping it
+  private static boolean isPair(String value, int i) {
+    return Character.isHighSurrogate(value.charAt(i)) && i + 1 < value.length()
+        && Character.isLowSurrogate(value.charAt(i + 1));
+  }
+
+  private static final class CharSink implements Sink {
+
+    private final Appendable out;
+    private final char[] digits = new char[19];
+
+    private CharSink(Appendable out) {
+      this.out = out;
+    }
+
+    @Override
+    public void raw(char c) throws IOException {
+      out.append(c);
+    }
+
+    @Override
+    public void raw(String ascii) throws IOException {
+      out.append(ascii);
+    }
+
+    @Override
+    public void digits(long value) throws IOException {
+      var length = length(value);
+      for (int i = length - 1; i >= 0; i--) {
+        digits[i] = (char) ('0' + value % 10);
+        value /= 10;
+      }
+      for (int i = 0; i < length; i++) {
+        out.append(digits[i]);
+      }
+    }
+
+    @Override
+    public void string(String value) throws IOException {
+      out.append('"');
+      var start = 0;
+      for (int i = 0; i < value.length(); i++) {
+        var c = value.charAt(i);
+        var escape = escape(c);
+        if (escape == 0 && Character.isSurrogate(c)) {
+          if (isPair(value, i)) {
+            i++;
+            continue;
+          }
+          escape = 'u';
+        }
+        if (escape == 0) {
+          continue;
+        }
+        out.append(value, start, i).append('\\').append(escape);
+        if (escape == 'u') {
+          out.append(HEX[c >> 12]).append(HEX[c >> 8 & 0xF]).append(HEX[c >> 4 & 0xF]).append(HEX[c & 0xF]);
+        }
+        start = i + 1;
+      }
+      out.append(value, start, value.length()).append('"');
+    }
+  }
+
+  /*
+   * encodes to UTF-8 by hand into a small array, which is copied in bulk to
+   * the target buffer or stream whenever it might not fit the next char
+   */
+  private static final class ByteSink implements Sink {
+
+    private final ByteBuffer buffer;
+    private final OutputStream out;
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+    private int position;
+
+    private ByteSink(ByteBuffer buffer, OutputStream out) {
+      this.buffer = buffer;
+      this.out = out;
+    }
+
+    private void ensure(int length) throws IOException {
+      if (bytes.length - position < length) {
+        flush();
+      }
+    }
+
+    void flush() throws IOException {
+      if (out != null) {
+        out.write(bytes, 0, position);
+      } else {
+        buffer.put(bytes, 0, position);
+      }
+      position = 0;
+    }
+
+    @Override
+    public void raw(char c) throws IOException {
+      ensure(1);
+      bytes[position++] = (byte) c;
+    }
+
+    @Override
+    public void raw(String ascii) throws IOException {
+      ensure(ascii.length());
+      for (int i = 0; i < ascii.length(); i++) {
+        bytes[position++] = (byte) ascii.charAt(i);
+      }
+    }
+
+    @Override
+    public void digits(long value) throws IOException {
+      var length = length(value);
+      ensure(length);
+      for (int i = position + length - 1; i >= position; i--) {
+        bytes[i] = (byte) ('0' + value % 10);
+        value /= 10;
+      }
+      position += length;
+    }
+
+    @Override
+    public void string(String value) throws IOException {
+      // a char takes 6 bytes at most, so short strings are checked only once
+      var worstCase = 6 * value.length() + 2;
+      var fits = worstCase <= bytes.length;
+      ensure(fits ? worstCase : 1);
+      bytes[position++] = '"';
+      for (int i = 0; i < value.length(); i++) {
+        var c = value.charAt(i);
+        if (!fits) {
+          ensure(6);
+        }
+        if (c < 0x80) {
+          var escape = escape(c);
+          if (escape == 0) {
+            bytes[position++] = (byte) c;
+          } else {
+            bytes[position++] = '\\';
+            bytes[position++] = (byte) escape;
+            if (escape == 'u') {
+              unicode(c);
+            }
+          }
+        } else if (c < 0x800) {
+          bytes[position++] = (byte) (0xC0 | c >> 6);
+          bytes[position++] = (byte) (0x80 | c & 0x3F);
+        } else if (isPair(value, i)) {
+          var codePoint = Character.toCodePoint(c, value.charAt(++i));
+          bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+          bytes[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+          bytes[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+          bytes[position++] = (byte) (0x80 | codePoint & 0x3F);
+        } else if (Character.isSurrogate(c)) {
+          bytes[position++] = '\\';
+          bytes[position++] = 'u';
+          unicode(c);
+        } else {
+          bytes[position++] = (byte) (0xE0 | c >> 12);
+          bytes[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+          bytes[position++] = (byte) (0x80 | c & 0x3F);
+        }
+      }
+      raw('"');
+    }
+
+    private void unicode(char c) {
+      bytes[position++] = (byte) HEX[c >> 12];
+      bytes[position++] = (byte) HEX[c >> 8 & 0xF];
+      bytes[position++] = (byte) HEX[c >> 4 & 0xF];
+      bytes[position++] = (byte) HEX[c & 0xF];
+    }
+  }
+
+  static void main() throws IOException {
+    var json = JsonDsl.array(JsonDsl.string("quote \" backslash \\ tab \t bell \u0007 ñ € 😀"), JsonDsl.number(-42));
+    var out = new StringBuilder();
+    write(json, out);
+    System.console().println(out);
+
+    var bytes = ByteBuffer.allocate(128);
+    write(json, bytes);
+    System.console().println(new String(bytes.array(), 0, bytes.position(), UTF_8));
+  }
+}
@@ -0,0 +1,94 @@
+package bench;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+import com.sun.management.ThreadMXBean;
+
+public final class Bench {
+
+  private static final Duration WARMUP = Duration.ofSeconds(1);
+  private static final Duration MEASURE = Duration.ofSeconds(2);
+
+  private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private static volatile Object sink;
+
+  private Bench() {}
+
+  public static void run(String name, Supplier<?> operation) {
+    measure(operation, WARMUP);
+    var result = measure(operation, MEASURE);
+    System.console().println(result.format(name));
+  }
+
+  public static void run(String name, int threads, Supplier<?> operation) {
+    measure(operation, threads, WARMUP);
+    var result = measure(operation, threads, MEASURE);
+    System.console().println(result.format(name + " (" + threads + " threads)"));
+  }
+
+  public record Result(long operations, long nanos, long bytes) {
+    public double throughput() {
+      return operations * 1e9 / nanos;
+    }
+
+    public double nanosPerOperation() {
+      return (double) nanos / operations;
+    }
+
+    public double bytesPerOperation() {
+      return (double) bytes / operations;
+    }
+
+    public double allocationRate() {
+      return bytes * 1e9 / nanos / (1024 * 1024);
+    }
+
+    String format(String name) {
+      return String.format("%-48s %14.1f ops/s %14.1f ns/op %14.1f B/op %10.1f MB/s",
+          name, throughput(), nanosPerOperation(), bytesPerOperation(), allocationRate());
+    }
+  }
+
+  private static Result measure(Supplier<?> operation, int threads, Duration duration) {
+    var results = new Result[threads];
+    var workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      var index = i;
+      workers[i] = Thread.ofPlatform().start(() -> results[index] = measure(operation, duration));
+    }
+    try {
+      for (var worker : workers) {
+        worker.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    long operations = 0;
+    long nanos = 0;
+    long bytes = 0;
+    for (var result : results) {
+      operations += result.operations();
+      nanos = Math.max(nanos, result.nanos());
+      bytes += result.bytes();
+    }
+    return new Result(operations, nanos, bytes);
+  }
+
+  private static Result measure(Supplier<?> operation, Duration duration) {
+    var thread = Thread.currentThread().threadId();
+    var deadline = System.nanoTime() + duration.toNanos();
+    var bytes = THREADS.getThreadAllocatedBytes(thread);
+    var start = System.nanoTime();
+    long operations = 0;
+    long now;
+    do {
+      sink = operation.get();
+      operations++;
+    } while ((now = System.nanoTime()) < deadline);
+    return new Result(operations, now - start, THREADS.getThreadAllocatedBytes(thread) - bytes);
+  }
+}
@@ -0,0 +1,34 @@
+package check;
+
+/*
+ * the assertions of the *Test classes. Each test is a main that runs its
+ * checks in order and stops at the first failure, so a passing run only
+ * prints "ok".
+ */
+public final class Checks {
+
+  private Checks() {}
+
+  public interface Action {
+    void run() throws Exception;
+  }
+
+  public static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new AssertionError(message);
+    }
+  }
+
+  // the exception thrown by action, which must be an expected one
+  public static <E extends Throwable> E fails(Class<E> expected, Action action, String message) {
+    try {
+      action.run();
+    } catch (Throwable e) {
+      if (expected.isInstance(e)) {
+        return expected.cast(e);
+      }
+      throw new AssertionError(message + ": unexpected " + e, e);
+    }
+    throw new AssertionError(message);
+  }
+}
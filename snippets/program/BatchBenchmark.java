@@ -0,0 +1,44 @@
+package program;
+
+import static program.Todo.State.NOT_COMPLETED;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.function.Supplier;
+
+import program.Todo.Repository;
+import program.Todo.TodoEntity;
+
+final class BatchBenchmark {
+
+  static Program<Repository, Void> bulkImport(int todos) {
+    Program<Repository, Void> program = Todo.create(new TodoEntity(0, "todo number 0", NOT_COMPLETED));
+    for (int id = 1; id < todos; id++) {
+      program = program.andThen(Todo.create(new TodoEntity(id, "todo number " + id, NOT_COMPLETED)));
+    }
+    return program;
+  }
+
+  static void run(String name, int todos, Supplier<Repository> repository, boolean coalesce) {
+    var program = bulkImport(todos);
+    var start = System.nanoTime();
+    (coalesce ? Todo.coalesce(program) : program).eval(repository.get());
+    var nanos = System.nanoTime() - start;
+    System.console().println(String.format("%-36s %10d todos %8d ms %14.1f todos/s",
+        name + (coalesce ? " (coalesced)" : ""), todos, nanos / 1_000_000, todos * 1e9 / nanos));
+  }
+
+  static void main(String... args) throws IOException {
+    var todos = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+    for (var coalesce : new boolean[] { false, true }) {
+      run("Concurrent", todos, ConcurrentRepository::new, coalesce);
+      var directory = Files.createTempDirectory("todo-log");
+      try (var log = new LogRepository(directory, LogRepository.SEGMENT_SIZE, 16)) {
+        run("Log, commit every 16", todos, () -> log, coalesce);
+      } finally {
+        DurabilityBenchmark.delete(directory);
+      }
+    }
+  }
+}
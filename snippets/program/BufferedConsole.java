@@ -0,0 +1,72 @@
+package program;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * collects lines and hands them to the console as a single write: before
+ * reading, when the buffer reaches maxBuffered chars or, optionally, on a
+ * timer, so output doesn't sit in the buffer while the program is busy.
+ */
+final class BufferedConsole implements Console.Service, AutoCloseable {
+
+  static final int MAX_BUFFERED = 8 * 1024;
+
+  private final Console.Service console;
+  private final int maxBuffered;
+  private final ScheduledExecutorService timer;
+  private final StringBuilder buffer = new StringBuilder();
+
+  BufferedConsole(Console.Service console) {
+    this(console, MAX_BUFFERED, null);
+  }
+
+  BufferedConsole(Console.Service console, int maxBuffered, Duration flushInterval) {
+    if (maxBuffered < 1) {
+      throw new IllegalArgumentException("maxBuffered must be positive: " + maxBuffered);
+    }
+    this.console = console;
+    this.maxBuffered = maxBuffered;
+    if (flushInterval == null) {
+      this.timer = null;
+    } else {
+      this.timer = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+      var nanos = flushInterval.toNanos();
+      timer.scheduleWithFixedDelay(this::flush, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @Override
+  public synchronized void writeLine(String line) {
+    if (!buffer.isEmpty()) {
+      buffer.append('\n');
+    }
+    buffer.append(line);
+    if (buffer.length() >= maxBuffered) {
+      flush();
+    }
+  }
+
+  @Override
+  public String readLine() {
+    flush();
+    return console.readLine();
+  }
+
+  synchronized void flush() {
+    if (!buffer.isEmpty()) {
+      console.writeLine(buffer.toString());
+      buffer.setLength(0);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (timer != null) {
+      timer.shutdown();
+    }
+    flush();
+  }
+}
@@ -0,0 +1,262 @@
+package program;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+
+final class Cache<K, V> {
+
+  enum Eviction {
+    LRU, LFU, TINY_LFU
+  }
+
+  record Stats(long hits, long misses, long evictions, long expirations, int size) {
+    double hitRatio() {
+      var requests = hits + misses;
+      return requests == 0 ? 0 : (double) hits / requests;
+    }
+  }
+
+  private static final class Entry<V> {
+
+    private final V value;
+    private final long expiresAt;
+    private long frequency;
+
+    private Entry(V value, long expiresAt) {
+      this.value = value;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final Eviction eviction;
+  private final int maxSize;
+  private final long ttlNanos;
+  private final LinkedHashMap<K, Entry<V>> entries;
+  // LFU only: the keys of each frequency, oldest first, so evict doesn't scan the entries
+  private final TreeMap<Long, LinkedHashSet<K>> frequencies;
+  private final FrequencySketch sketch;
+
+  // bumped by every invalidation, see put(key, value, stamp)
+  private long stamp;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private long expirations;
+
+  Cache(Eviction eviction, int maxSize, Duration ttl) {
+    if (maxSize < 1) {
+      throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+    }
+    this.eviction = Objects.requireNonNull(eviction);
+    this.maxSize = maxSize;
+    this.ttlNanos = ttl.toNanos();
+    this.entries = new LinkedHashMap<>(16, 0.75f, eviction != Eviction.LFU);
+    this.frequencies = eviction == Eviction.LFU ? new TreeMap<>() : null;
+    this.sketch = eviction == Eviction.TINY_LFU ? new FrequencySketch(maxSize) : null;
+  }
+
+  static <K, V> Cache<K, V> lru(int maxSize) {
+    return lru(maxSize, Duration.ofNanos(Long.MAX_VALUE));
+  }
+
+  static <K, V> Cache<K, V> lru(int maxSize, Duration ttl) {
+    return new Cache<>(Eviction.LRU, maxSize, ttl);
+  }
+
+  static <K, V> Cache<K, V> lfu(int maxSize) {
+    return lfu(maxSize, Duration.ofNanos(Long.MAX_VALUE));
+  }
+
+  static <K, V> Cache<K, V> lfu(int maxSize, Duration ttl) {
+    return new Cache<>(Eviction.LFU, maxSize, ttl);
+  }
+
+  static <K, V> Cache<K, V> tinyLfu(int maxSize) {
+    return tinyLfu(maxSize, Duration.ofNanos(Long.MAX_VALUE));
+  }
+
+  static <K, V> Cache<K, V> tinyLfu(int maxSize, Duration ttl) {
+    return new Cache<>(Eviction.TINY_LFU, maxSize, ttl);
+  }
+
+  synchronized Optional<V> get(K key) {
+    if (sketch != null) {
+      sketch.increment(key.hashCode());
+    }
+    var entry = entries.get(key);
+    if (entry != null && isExpired(entry, System.nanoTime())) {
+      remove(key);
+      expirations++;
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return Optional.empty();
+    }
+    hits++;
+    if (frequencies != null) {
+      unlink(key, entry);
+      entry.frequency++;
+      link(key, entry);
+    }
+    return Optional.of(entry.value);
+  }
+
+  synchronized void put(K key, V value) {
+    var expiresAt = ttlNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + ttlNanos;
+    var present = entries.containsKey(key);
+    if (sketch != null && entries.size() >= maxSize && !present && !admit(key)) {
+      evictions++;
+      return;
+    }
+    if (present) {
+      remove(key);
+    } else {
+      while (entries.size() >= maxSize) {
+        evict();
+      }
+    }
+    var entry = new Entry<>(Objects.requireNonNull(value), expiresAt);
+    entries.put(key, entry);
+    if (frequencies != null) {
+      link(key, entry);
+    }
+  }
+
+  /*
+   * a value read before an invalidation may already be stale, so it is only
+   * cached if nothing was invalidated since stamp() was taken, before the read
+   */
+  synchronized void put(K key, V value, long stamp) {
+    if (stamp == this.stamp) {
+      put(key, value);
+    }
+  }
+
+  synchronized long stamp() {
+    return stamp;
+  }
+
+  synchronized void invalidate(K key) {
+    stamp++;
+    remove(key);
+  }
+
+  synchronized void invalidateAll() {
+    stamp++;
+    entries.clear();
+    if (frequencies != null) {
+      frequencies.clear();
+    }
+  }
+
+  synchronized Stats stats() {
+    return new Stats(hits, misses, evictions, expirations, entries.size());
+  }
+
+  /*
+   * LRU and TinyLFU evict the least recently used entry, the one admit compared
+   * against; LFU the oldest of the least frequently used ones
+   */
+  private void evict() {
+    var victim = frequencies == null
+        ? entries.keySet().iterator().next()
+        : frequencies.firstEntry().getValue().iterator().next();
+    if (isExpired(remove(victim), System.nanoTime())) {
+      expirations++;
+    } else {
+      evictions++;
+    }
+  }
+
+  private Entry<V> remove(K key) {
+    var entry = entries.remove(key);
+    if (entry != null && frequencies != null) {
+      unlink(key, entry);
+    }
+    return entry;
+  }
+
+  private void link(K key, Entry<V> entry) {
+    frequencies.computeIfAbsent(entry.frequency, _ -> new LinkedHashSet<>()).add(key);
+  }
+
+  private void unlink(K key, Entry<V> entry) {
+    var keys = frequencies.get(entry.frequency);
+    keys.remove(key);
+    if (keys.isEmpty()) {
+      frequencies.remove(entry.frequency);
+    }
+  }
+
+  /*
+   * https://arxiv.org/abs/1512.00727 without the admission window: a new key
+   * only replaces the least recently used one if it has been asked for more often
+   */
+  private boolean admit(K key) {
+    var victim = entries.entrySet().iterator().next();
+    if (isExpired(victim.getValue(), System.nanoTime())) {
+      return true;
+    }
+    return sketch.frequency(key.hashCode()) > sketch.frequency(victim.getKey().hashCode());
+  }
+
+  private boolean isExpired(Entry<V> entry, long now) {
+    return entry.expiresAt != Long.MAX_VALUE && now - entry.expiresAt >= 0;
+  }
+
+  /*
+   * count-min sketch with four 4-bit counters per key packed in longs, halved
+   * every 10 * maxSize increments so old popularity fades away
+   */
+  private static final class FrequencySketch {
+
+    private final long[] table;
+    private final int sampleSize;
+    private int increments;
+
+    private FrequencySketch(int maxSize) {
+      this.table = new long[Math.max(8, Integer.highestOneBit(maxSize - 1) << 1)];
+      this.sampleSize = 10 * maxSize;
+    }
+
+    void increment(int hash) {
+      var added = false;
+      for (int row = 0; row < 4; row++) {
+        var index = index(hash, row);
+        var shift = offset(hash, row);
+        if (((table[index] >>> shift) & 0xF) < 15) {
+          table[index] += 1L << shift;
+          added = true;
+        }
+      }
+      if (added && ++increments == sampleSize) {
+        for (int i = 0; i < table.length; i++) {
+          table[i] = (table[i] >>> 1) & 0x7777_7777_7777_7777L;
+        }
+        increments /= 2;
+      }
+    }
+
+    int frequency(int hash) {
+      var frequency = 15;
+      for (int row = 0; row < 4; row++) {
+        frequency = Math.min(frequency, (int) ((table[index(hash, row)] >>> offset(hash, row)) & 0xF));
+      }
+      return frequency;
+    }
+
+    private int index(int hash, int row) {
+      var h = (hash + row * 0x9E3779B9) * 0x85EBCA6B;
+      return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    private static int offset(int hash, int row) {
+      return ((hash >>> (row * 4)) & 0xF) << 2;
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package program;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.UnaryOperator;
+
+import bench.Bench;
+import program.Todo.TodoEntity;
+
+final class CachingBenchmark {
+
+  static final int TODOS = 100_000;
+  static final int CACHED = 10_000;
+
+  /*
+   * a repository that pays a round trip per call, batches included
+   */
+  record Remote(Todo.Repository repository, Duration latency) implements Todo.Repository {
+
+    void roundTrip() {
+      LockSupport.parkNanos(latency.toNanos());
+    }
+
+    @Override
+    public void create(TodoEntity todo) {
+      roundTrip();
+      repository.create(todo);
+    }
+
+    @Override
+    public void createAll(List<TodoEntity> todos) {
+      roundTrip();
+      repository.createAll(todos);
+    }
+
+    @Override
+    public void update(int id, UnaryOperator<TodoEntity> update) {
+      roundTrip();
+      repository.update(id, update);
+    }
+
+    @Override
+    public Optional<TodoEntity> find(int id) {
+      roundTrip();
+      return repository.find(id);
+    }
+
+    @Override
+    public List<TodoEntity> findAll() {
+      roundTrip();
+      return repository.findAll();
+    }
+
+    @Override
+    public void delete(int id) {
+      roundTrip();
+      repository.delete(id);
+    }
+
+    @Override
+    public void deleteMany(Collection<Integer> ids) {
+      roundTrip();
+      repository.deleteMany(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+      roundTrip();
+      repository.deleteAll();
+    }
+  }
+
+  /*
+   * skewed towards low ids, 10% updates
+   */
+  static Object skewed(Todo.Repository repository) {
+    var random = ThreadLocalRandom.current();
+    var id = (int) (TODOS * Math.pow(random.nextDouble(), 4));
+    if (random.nextInt(10) == 0) {
+      repository.update(id, RepositoryBenchmark::increment);
+      return repository;
+    }
+    return repository.find(id);
+  }
+
+  static Todo.Repository remote() {
+    var repository = RepositoryBenchmark.fill(new ConcurrentRepository(), TODOS);
+    return new Remote(repository, Duration.ofNanos(20_000));
+  }
+
+  static void run(String name, CachingRepository repository) {
+    try (repository) {
+      Bench.run(name, () -> skewed(repository));
+      var stats = repository.stats();
+      System.console().println(String.format(
+          "  hit ratio %.3f, %d evictions, %d flushes of %d writes, flush lag %s last / %s max",
+          stats.cache().hitRatio(), stats.cache().evictions(), stats.flushes(), stats.flushedWrites(),
+          stats.lastFlushLag(), stats.maxFlushLag()));
+    }
+  }
+
+  static void main() {
+    var remote = remote();
+    Bench.run("remote, 20us per call", () -> skewed(remote));
+
+    run("write-through LRU", CachingRepository.writeThrough(remote(), Cache.lru(CACHED)));
+    run("write-through TinyLFU", CachingRepository.writeThrough(remote(), Cache.tinyLfu(CACHED)));
+    run("write-behind LRU", CachingRepository.writeBehind(
+        remote(), Cache.lru(CACHED), Duration.ofMillis(100), 1_000));
+    run("write-behind TinyLFU", CachingRepository.writeBehind(
+        remote(), Cache.tinyLfu(CACHED), Duration.ofMillis(100), 1_000));
+  }
+}
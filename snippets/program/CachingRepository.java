@@ -0,0 +1,348 @@
+package program;
+
+import static java.lang.System.Logger.Level.WARNING;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import program.Todo.Page;
+import program.Todo.State;
+import program.Todo.TodoEntity;
+
+/*
+ * near-cache in front of a slow repository. Write-through keeps the backend
+ * current on every write; write-behind keeps the last write per id in a queue
+ * that is flushed as one batch, on a timer or when it gets too long. Queries
+ * that scan the backend flush first. The backend is never called while
+ * holding the monitor, so a slow call doesn't block cache hits; a write
+ * counter keeps finds from caching values that a concurrent write replaced.
+ */
+final class CachingRepository implements Todo.Repository, AutoCloseable {
+
+  record Stats(Cache.Stats cache, long flushes, long flushedWrites, int pendingWrites,
+      Duration lastFlushLag, Duration maxFlushLag) {}
+
+  private static final System.Logger LOGGER = System.getLogger(CachingRepository.class.getName());
+
+  private final Todo.Repository repository;
+  private final Cache<Integer, TodoEntity> cache;
+  private final int maxPending;
+  private final ScheduledExecutorService flusher;
+  private final Object flushLock = new Object();
+
+  // Optional.empty() is a pending delete
+  private Map<Integer, Optional<TodoEntity>> pending = new LinkedHashMap<>();
+  private Map<Integer, Optional<TodoEntity>> flushing = Map.of();
+  private long writes;
+  private long oldestPending;
+  private long flushes;
+  private long flushedWrites;
+  private long lastFlushLag;
+  private long maxFlushLag;
+
+  private CachingRepository(Todo.Repository repository, Cache<Integer, TodoEntity> cache,
+      Duration flushInterval, int maxPending) {
+    this.repository = repository;
+    this.cache = cache;
+    this.maxPending = maxPending;
+    if (flushInterval == null) {
+      this.flusher = null;
+    } else {
+      this.flusher = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+      var nanos = flushInterval.toNanos();
+      flusher.scheduleWithFixedDelay(this::scheduledFlush, nanos, nanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  static CachingRepository writeThrough(Todo.Repository repository, Cache<Integer, TodoEntity> cache) {
+    return new CachingRepository(repository, cache, null, 0);
+  }
+
+  static CachingRepository writeBehind(Todo.Repository repository, Cache<Integer, TodoEntity> cache,
+      Duration flushInterval, int maxPending) {
+    if (maxPending < 1) {
+      throw new IllegalArgumentException("maxPending must be positive: " + maxPending);
+    }
+    return new CachingRepository(repository, cache, flushInterval, maxPending);
+  }
+
+  @Override
+  public void create(TodoEntity todo) {
+    if (flusher == null) {
+      writeThrough(List.of(todo.id()), () -> repository.create(todo), List.of(todo));
+    } else {
+      enqueue(Map.of(todo.id(), Optional.of(todo)));
+    }
+  }
+
+  @Override
+  public void createAll(List<TodoEntity> todos) {
+    if (flusher == null) {
+      writeThrough(todos.stream().map(TodoEntity::id).toList(), () -> repository.createAll(todos), todos);
+      return;
+    }
+    var batch = new LinkedHashMap<Integer, Optional<TodoEntity>>();
+    todos.forEach(todo -> batch.put(todo.id(), Optional.of(todo)));
+    enqueue(batch);
+  }
+
+  @Override
+  public void update(int id, UnaryOperator<TodoEntity> update) {
+    if (flusher == null) {
+      writeThrough(List.of(id), () -> repository.update(id, update), List.of());
+      return;
+    }
+    // the update runs again if another write happened while reading the todo
+    while (true) {
+      long seen;
+      synchronized (this) {
+        seen = writes;
+      }
+      var current = find(id);
+      synchronized (this) {
+        if (writes != seen) {
+          continue;
+        }
+        var updated = current.map(update);
+        if (updated.isEmpty()) {
+          return;
+        }
+        pending(id, updated);
+      }
+      flushIfFull();
+      return;
+    }
+  }
+
+  // write-behind updates only read the backend, so they go one by one
+  @Override
+  public void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+    if (flusher == null) {
+      writeThrough(updates.keySet(), () -> repository.updateAll(updates), List.of());
+    } else {
+      updates.forEach(this::update);
+    }
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    long seen;
+    synchronized (this) {
+      var cached = cache.get(id);
+      if (cached.isPresent()) {
+        return cached;
+      }
+      var write = pending.getOrDefault(id, flushing.get(id));
+      if (write != null) {
+        return write;
+      }
+      seen = writes;
+    }
+    var found = repository.find(id);
+    synchronized (this) {
+      if (writes == seen) {
+        found.ifPresent(todo -> cache.put(id, todo));
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    flush();
+    return repository.findAll();
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    flush();
+    repository.forEach(action);
+  }
+
+  @Override
+  public List<TodoEntity> findByState(State state) {
+    flush();
+    return repository.findByState(state);
+  }
+
+  @Override
+  public List<TodoEntity> findByTitlePrefix(String prefix) {
+    flush();
+    return repository.findByTitlePrefix(prefix);
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    flush();
+    return repository.findPage(after, size);
+  }
+
+  @Override
+  public void delete(int id) {
+    if (flusher == null) {
+      writeThrough(List.of(id), () -> repository.delete(id), List.of());
+    } else {
+      enqueue(Map.of(id, Optional.empty()));
+    }
+  }
+
+  @Override
+  public void deleteMany(Collection<Integer> ids) {
+    if (flusher == null) {
+      writeThrough(ids, () -> repository.deleteMany(ids), List.of());
+      return;
+    }
+    var batch = new LinkedHashMap<Integer, Optional<TodoEntity>>();
+    ids.forEach(id -> batch.put(id, Optional.empty()));
+    enqueue(batch);
+  }
+
+  @Override
+  public void deleteAll() {
+    synchronized (flushLock) {
+      synchronized (this) {
+        writes++;
+        pending.clear();
+        cache.invalidateAll();
+      }
+      try {
+        repository.deleteAll();
+      } finally {
+        synchronized (this) {
+          writes++;
+          cache.invalidateAll();
+        }
+      }
+    }
+  }
+
+  /*
+   * writes the queued writes as one deleteMany and one createAll; every id is
+   * queued once, so their order doesn't matter. When the backend fails the
+   * batch goes back to the queue, behind any newer write for the same id.
+   */
+  void flush() {
+    synchronized (flushLock) {
+      Map<Integer, Optional<TodoEntity>> batch;
+      long since;
+      synchronized (this) {
+        if (pending.isEmpty()) {
+          return;
+        }
+        batch = flushing = pending;
+        since = oldestPending;
+        pending = new LinkedHashMap<>();
+      }
+      var todos = new ArrayList<TodoEntity>(batch.size());
+      var deleted = new ArrayList<Integer>();
+      batch.forEach((id, write) -> write.ifPresentOrElse(todos::add, () -> deleted.add(id)));
+      var flushed = false;
+      try {
+        repository.deleteMany(deleted);
+        repository.createAll(todos);
+        flushed = true;
+      } finally {
+        synchronized (this) {
+          flushing = Map.of();
+          if (flushed) {
+            flushes++;
+            flushedWrites += batch.size();
+            lastFlushLag = System.nanoTime() - since;
+            maxFlushLag = Math.max(maxFlushLag, lastFlushLag);
+          } else {
+            var requeued = new LinkedHashMap<>(batch);
+            requeued.putAll(pending);
+            pending = requeued;
+            oldestPending = since;
+          }
+        }
+      }
+    }
+  }
+
+  // an exception would cancel the schedule, and the writes are still queued
+  private void scheduledFlush() {
+    try {
+      flush();
+    } catch (RuntimeException e) {
+      LOGGER.log(WARNING, "flush failed, will retry", e);
+    }
+  }
+
+  synchronized Stats stats() {
+    return new Stats(cache.stats(), flushes, flushedWrites, pending.size(),
+        Duration.ofNanos(lastFlushLag), Duration.ofNanos(maxFlushLag));
+  }
+
+  @Override
+  public void close() {
+    if (flusher != null) {
+      flusher.shutdown();
+      flush();
+    }
+  }
+
+  private void enqueue(Map<Integer, Optional<TodoEntity>> batch) {
+    synchronized (this) {
+      batch.forEach(this::pending);
+    }
+    flushIfFull();
+  }
+
+  /*
+   * the backend is called outside the monitor, once for the whole batch; the
+   * counter is bumped before and after, so a find that overlaps the call
+   * doesn't cache what it read, and the written todos are only cached if no
+   * other write overlapped
+   */
+  private void writeThrough(Collection<Integer> ids, Runnable write, List<TodoEntity> written) {
+    long seen;
+    synchronized (this) {
+      seen = ++writes;
+      ids.forEach(cache::invalidate);
+    }
+    var done = false;
+    try {
+      write.run();
+      done = true;
+    } finally {
+      synchronized (this) {
+        ids.forEach(cache::invalidate);
+        if (done && writes == seen) {
+          written.forEach(todo -> cache.put(todo.id(), todo));
+        }
+        writes++;
+      }
+    }
+  }
+
+  private void pending(int id, Optional<TodoEntity> write) {
+    writes++;
+    if (pending.isEmpty()) {
+      oldestPending = System.nanoTime();
+    }
+    pending.put(id, write);
+    write.ifPresentOrElse(todo -> cache.put(id, todo), () -> cache.invalidate(id));
+  }
+
+  private void flushIfFull() {
+    boolean full;
+    synchronized (this) {
+      full = pending.size() >= maxPending;
+    }
+    if (full) {
+      flush();
+    }
+  }
+}
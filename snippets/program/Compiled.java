@@ -0,0 +1,174 @@
+package program;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import program.Program.AndThen;
+import program.Program.Done;
+import program.Program.Dsl;
+import program.Program.Mapped;
+import program.Program.Then;
+
+/*
+ * flat instruction array with a single value register, for the static parts
+ * of a program: Done, Then, Mapped and Dsl nodes. AndThen continuations are
+ * only known at runtime, so they are left to the tree interpreter. binds
+ * counts the Then nodes flattened into the array, for Metrics.
+ */
+record Compiled<S, T>(byte[] opcodes, Object[] operands, int binds) implements Dsl<S, T> {
+
+  static final byte HANDLE = 0;
+  static final byte MAP = 1;
+  static final byte CONST = 2;
+
+  private record MapOp(Function<?, ?> mapper) {}
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T handle(S state) {
+    Object value = null;
+    for (int pc = 0; pc < opcodes.length; pc++) {
+      switch (opcodes[pc]) {
+        case HANDLE -> value = ((Dsl<S, ?>) operands[pc]).handle(state);
+        case MAP -> value = ((Function<Object, ?>) operands[pc]).apply(value);
+        case CONST -> value = operands[pc];
+        default -> throw new IllegalStateException("invalid opcode " + opcodes[pc]);
+      }
+    }
+    return (T) value;
+  }
+
+  // records the same binds and instructions as the tree interpreter would
+  @SuppressWarnings("unchecked")
+  T handle(S state, Metrics metrics) {
+    metrics.bind(binds);
+    Object value = null;
+    for (int pc = 0; pc < opcodes.length; pc++) {
+      switch (opcodes[pc]) {
+        case HANDLE -> {
+          var dsl = (Dsl<S, ?>) operands[pc];
+          var start = System.nanoTime();
+          value = dsl.handle(state);
+          metrics.record(dsl.getClass(), System.nanoTime() - start);
+        }
+        case MAP -> value = ((Function<Object, ?>) operands[pc]).apply(value);
+        case CONST -> value = operands[pc];
+        default -> throw new IllegalStateException("invalid opcode " + opcodes[pc]);
+      }
+    }
+    return (T) value;
+  }
+
+  /*
+   * a single pass over an explicit stack: a node is built after its children,
+   * which tells whether everything under it is static. The largest static
+   * subtrees are emitted once, when their parent is not static.
+   */
+  @SuppressWarnings("unchecked")
+  static <S, T> Program<S, T> compile(Program<S, T> program) {
+    var pending = new ArrayDeque<Object>();
+    var built = new ArrayList<Built>();
+    pending.push(program);
+    while (!pending.isEmpty()) {
+      var next = pending.pop();
+      switch (next) {
+        case Then<?, ?, ?> then -> {
+          pending.push(new Build(then));
+          pending.push(then.next());
+          pending.push(then.current());
+        }
+        case AndThen<?, ?, ?> andThen -> {
+          pending.push(new Build(andThen));
+          pending.push(andThen.current());
+        }
+        case Mapped<?, ?, ?> mapped -> {
+          pending.push(new Build(mapped));
+          pending.push(mapped.current());
+        }
+        case Build(Then<?, ?, ?> then) -> {
+          var second = built.removeLast();
+          var first = built.removeLast();
+          built.add(first.isStatic() && second.isStatic()
+              ? new Built(then, true)
+              : new Built(rebuild(then, first, second), false));
+        }
+        case Build(AndThen<?, ?, ?> andThen) -> built.add(new Built(rebuild(andThen, built.removeLast()), false));
+        case Build(Mapped<?, ?, ?> mapped) -> {
+          var current = built.removeLast();
+          built.add(current.isStatic() ? new Built(mapped, true) : new Built(rebuild(mapped, current), false));
+        }
+        case Build _ -> throw new IllegalStateException();
+        default -> built.add(new Built((Program<?, ?>) next, true));
+      }
+    }
+    return (Program<S, T>) built.getFirst().compiled();
+  }
+
+  // pushed under the children of a node, to build it once they are
+  private record Build(Program<?, ?> node) {}
+
+  // a static node is kept as is until its parent turns out not to be static
+  private record Built(Program<?, ?> program, boolean isStatic) {
+    Program<?, ?> compiled() {
+      return isStatic && (program instanceof Then || program instanceof Mapped) ? emit(program) : program;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, T, R> Program<S, R> rebuild(Then<S, T, R> then, Built current, Built next) {
+    return new Then<>((Program<S, T>) current.compiled(), (Program<S, R>) next.compiled());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, T, R> Program<S, R> rebuild(AndThen<S, T, R> andThen, Built current) {
+    return new AndThen<>((Program<S, T>) current.compiled(), andThen.next());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, T, R> Program<S, R> rebuild(Mapped<S, T, R> mapped, Built current) {
+    return new Mapped<>((Program<S, T>) current.compiled(), mapped.mapper(), mapped.fused());
+  }
+
+  private static <S, T> Compiled<S, T> emit(Program<S, T> program) {
+    var opcodes = new ArrayList<Byte>();
+    var operands = new ArrayList<Object>();
+    var pending = new ArrayDeque<Object>();
+    var binds = 0;
+    pending.push(program);
+    while (!pending.isEmpty()) {
+      switch (pending.pop()) {
+        case Then<?, ?, ?>(var current, var next) -> {
+          binds++;
+          pending.push(next);
+          pending.push(current);
+        }
+        case Mapped<?, ?, ?> mapped -> {
+          pending.push(new MapOp(mapped.mapper()));
+          pending.push(mapped.current());
+        }
+        case MapOp(var mapper) -> add(opcodes, operands, MAP, mapper);
+        case Done<?, ?>(var value) -> add(opcodes, operands, CONST, value);
+        case Compiled<?, ?> compiled -> {
+          binds += compiled.binds();
+          for (int i = 0; i < compiled.opcodes().length; i++) {
+            add(opcodes, operands, compiled.opcodes()[i], compiled.operands()[i]);
+          }
+        }
+        case Dsl<?, ?> dsl -> add(opcodes, operands, HANDLE, dsl);
+        default -> throw new IllegalStateException();
+      }
+    }
+    var bytes = new byte[opcodes.size()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = opcodes.get(i);
+    }
+    return new Compiled<>(bytes, operands.toArray(), binds);
+  }
+
+  private static void add(List<Byte> opcodes, List<Object> operands, byte opcode, Object operand) {
+    opcodes.add(opcode);
+    operands.add(operand);
+  }
+}
@@ -0,0 +1,80 @@
+package program;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import program.Todo.Page;
+import program.Todo.TodoEntity;
+
+/*
+ * ConcurrentHashMap locks only the bin of the key being written, so updates
+ * to different todos never contend and compute is atomic per key.
+ */
+final class ConcurrentRepository implements Todo.Repository {
+
+  private final ConcurrentHashMap<Integer, TodoEntity> repository;
+  private final PageIndex pages = new PageIndex();
+
+  ConcurrentRepository() {
+    this(Runtime.getRuntime().availableProcessors() * 64);
+  }
+
+  ConcurrentRepository(int initialCapacity) {
+    this.repository = new ConcurrentHashMap<>(initialCapacity);
+  }
+
+  @Override
+  public void create(TodoEntity todo) {
+    repository.put(todo.id(), todo);
+    pages.add(todo.id());
+  }
+
+  @Override
+  public void createAll(List<TodoEntity> todos) {
+    for (var todo : todos) {
+      repository.put(todo.id(), todo);
+      pages.add(todo.id());
+    }
+  }
+
+  @Override
+  public void update(int id, UnaryOperator<TodoEntity> update) {
+    repository.computeIfPresent(id, (_, todo) -> update.apply(todo));
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    return Optional.ofNullable(repository.get(id));
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    return List.copyOf(repository.values());
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    repository.values().forEach(action);
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    return pages.page(after, size, repository::get);
+  }
+
+  @Override
+  public void delete(int id) {
+    repository.remove(id);
+    pages.remove(id, repository::get);
+  }
+
+  @Override
+  public void deleteAll() {
+    repository.clear();
+    pages.clear(repository::get);
+  }
+}
@@ -29,6 +29,16 @@ sealed interface Console<T> extends Program.Dsl<Console.Service, T> {
     return Console.<S>writeLine(question).andThen(readLine());
   }
 
+  /*
+   * a run of WriteLine becomes a single WriteLine of the joined lines, so the
+   * service writes it at once
+   */
+  static <S, T> Program<S, T> coalesce(Program<S, T> program) {
+    return Program.coalesce(program,
+        (first, second) -> first instanceof WriteLine && second instanceof WriteLine,
+        run -> writeLine(String.join("\n", run.stream().map(line -> ((WriteLine) line).line()).toList())));
+  }
+
   static <S> Program<S, Void> sayHello(String name) {
     return writeLine("Hello " + name + "!");
   }
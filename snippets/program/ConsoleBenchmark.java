@@ -0,0 +1,48 @@
+package program;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import bench.Bench;
+
+/*
+ * every write goes straight to a file descriptor, like println does, so the
+ * numbers count syscalls. Output goes to /dev/null unless a path is given.
+ */
+final class ConsoleBenchmark {
+
+  record FileConsole(OutputStream out) implements Console.Service {
+
+    @Override
+    public void writeLine(String line) {
+      try {
+        out.write((line + "\n").getBytes(UTF_8));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public String readLine() {
+      return "2";
+    }
+  }
+
+  static void main(String... args) throws IOException {
+    try (var out = new FileOutputStream(args.length > 0 ? args[0] : "/dev/null")) {
+      var file = new FileConsole(out);
+      var unbuffered = new Todo.Context(new Todo.InMemory(), file);
+      var buffered = new Todo.Context(new Todo.InMemory(), new BufferedConsole(file));
+
+      var perLine = Todo.printMenu().compile();
+      Bench.run("Todo menu, a write per line", () -> perLine.eval(unbuffered));
+      Bench.run("Todo menu, coalesced WriteLine", () -> Todo.MENU.eval(unbuffered));
+      Bench.run("Todo menu, buffered console", () -> perLine.eval(buffered));
+      Bench.run("Todo menu, coalesced and buffered", () -> Todo.MENU.eval(buffered));
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package program;
+
+import static program.Todo.State.NOT_COMPLETED;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import program.Todo.TodoEntity;
+
+final class DurabilityBenchmark {
+
+  static void throughput(int commitEvery, int threads, int writes) throws IOException {
+    var directory = Files.createTempDirectory("todo-log");
+    try (var repository = new LogRepository(directory, LogRepository.SEGMENT_SIZE, commitEvery)) {
+      var start = System.nanoTime();
+      var writers = new Thread[threads];
+      for (int i = 0; i < threads; i++) {
+        var first = i;
+        writers[i] = Thread.ofPlatform().start(() -> {
+          for (int id = first; id < writes; id += threads) {
+            repository.create(new TodoEntity(id, "todo number " + id, NOT_COMPLETED));
+          }
+        });
+      }
+      for (var writer : writers) {
+        writer.join();
+      }
+      repository.sync();
+      var nanos = System.nanoTime() - start;
+      System.console().println(String.format("commit every %6d writes %4d threads %10d writes %14.1f writes/s",
+          commitEvery, threads, writes, writes * 1e9 / nanos));
+    } catch (InterruptedException e) {
+      throw new IllegalStateException(e);
+    } finally {
+      delete(directory);
+    }
+  }
+
+  static void recovery(int todos) throws IOException {
+    var directory = Files.createTempDirectory("todo-log");
+    try {
+      try (var repository = new LogRepository(directory, LogRepository.SEGMENT_SIZE, 4096)) {
+        for (int id = 0; id < todos; id++) {
+          repository.create(new TodoEntity(id, "todo number " + id, NOT_COMPLETED));
+        }
+      }
+      var start = System.nanoTime();
+      try (var repository = new LogRepository(directory)) {
+        var millis = (System.nanoTime() - start) / 1_000_000;
+        System.console().println(String.format("recovery of %10d todos %8d ms (%d recovered)",
+            todos, millis, repository.findAll().size()));
+      }
+    } finally {
+      delete(directory);
+    }
+  }
+
+  static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (var path : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(path);
+      }
+    }
+  }
+
+  static void main(String... args) throws IOException {
+    // durable acknowledgements: concurrent writers share a force
+    for (var threads : new int[] { 1, 4, 16, 64 }) {
+      throughput(1, threads, 10_000);
+    }
+    for (var commitEvery : new int[] { 16, 256, 4096 }) {
+      throughput(commitEvery, 1, 1_000_000);
+    }
+    recovery(args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000);
+  }
+}
@@ -0,0 +1,52 @@
+package program;
+
+import static program.Todo.State.NOT_COMPLETED;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import program.Todo.TodoEntity;
+
+final class FootprintBenchmark {
+
+  static long usedHeap() {
+    var runtime = Runtime.getRuntime();
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  static long usedDirect() {
+    return ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+        .filter(pool -> pool.getName().equals("direct"))
+        .mapToLong(BufferPoolMXBean::getMemoryUsed)
+        .sum();
+  }
+
+  static void footprint(String name, int todos, Supplier<Todo.Repository> factory) {
+    var heap = usedHeap();
+    var direct = usedDirect();
+    var repository = factory.get();
+    for (int id = 0; id < todos; id++) {
+      repository.create(new TodoEntity(id, "todo number " + id, NOT_COMPLETED));
+    }
+    var usedHeap = usedHeap() - heap;
+    var usedDirect = usedDirect() - direct;
+    System.console().println(String.format("%-32s %10d todos %8d MB heap %8d MB direct %6.1f B/todo",
+        name, todos, usedHeap >> 20, usedDirect >> 20, (double) (usedHeap + usedDirect) / todos));
+    if (repository.find(todos - 1).isEmpty()) {
+      throw new IllegalStateException();
+    }
+  }
+
+  static void main(String... args) {
+    var sizes = args.length > 0 ? new int[] { Integer.parseInt(args[0]) } : new int[] { 1_000_000, 10_000_000 };
+    for (var todos : sizes) {
+      footprint("Todo.InMemory", todos, Todo.InMemory::new);
+      footprint("IntMapRepository heap", todos, () -> new IntMapRepository(todos, false));
+      footprint("IntMapRepository off-heap", todos, () -> new IntMapRepository(todos, true));
+    }
+  }
+}
@@ -12,16 +12,19 @@ class Game {
     return State.<Context>getValue().map(value -> value == number);
   }
 
+  private static final Program<Context, Void> PLAY = Program.lazy(
+      () -> Console.<Context>prompt("Enter a number between 0 and 9")
+        .map(Integer::parseInt)
+        .andThen(Game::checkNumber)
+        .andThen(result -> {
+          if (result) {
+            return writeLine("YOU WIN!!");
+          }
+          return play();
+        }));
+
   static Program<Context, Void> play() {
-    return Console.<Context>prompt("Enter a number between 0 and 9")
-      .map(Integer::parseInt)
-      .andThen(Game::checkNumber)
-      .andThen(result -> {
-        if (result) {
-          return writeLine("YOU WIN!!");
-        }
-        return play();
-      });
+    return PLAY;
   }
 
   static void main() {
@@ -0,0 +1,299 @@
+package program;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import program.Todo.Page;
+import program.Todo.TodoEntity;
+
+/*
+ * https://en.wikipedia.org/wiki/Hash_array_mapped_trie
+ *
+ * every version is immutable, so readers just read the current root and
+ * writers copy the path to the changed todo and publish it with a CAS. An
+ * update function may run more than once when writers race on the root.
+ */
+final class HamtRepository implements Todo.Repository {
+
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+
+  private static final class Node {
+
+    static final Node EMPTY = new Node(0, new Object[0], 0);
+
+    // a slot is either a TodoEntity or a Node
+    final int bitmap;
+    final Object[] slots;
+    final int size;
+
+    private Node(int bitmap, Object[] slots, int size) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+      this.size = size;
+    }
+
+    private static int bit(int id, int shift) {
+      return 1 << ((id >>> shift) & MASK);
+    }
+
+    private int index(int bit) {
+      return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    TodoEntity find(int id, int shift) {
+      var node = this;
+      while (true) {
+        var bit = bit(id, shift);
+        if ((node.bitmap & bit) == 0) {
+          return null;
+        }
+        switch (node.slots[node.index(bit)]) {
+          case TodoEntity todo -> {
+            return todo.id() == id ? todo : null;
+          }
+          case Node child -> {
+            node = child;
+            shift += BITS;
+          }
+          default -> throw new IllegalStateException();
+        }
+      }
+    }
+
+    // the caller knows whether the id is new, so sizes stay exact
+    Node put(TodoEntity todo, int shift, boolean added) {
+      var bit = bit(todo.id(), shift);
+      var index = index(bit);
+      var size = added ? this.size + 1 : this.size;
+      if ((bitmap & bit) == 0) {
+        var copy = new Object[slots.length + 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        copy[index] = todo;
+        System.arraycopy(slots, index, copy, index + 1, slots.length - index);
+        return new Node(bitmap | bit, copy, size);
+      }
+      var copy = slots.clone();
+      copy[index] = switch (slots[index]) {
+        case TodoEntity existing when existing.id() == todo.id() -> todo;
+        case TodoEntity existing -> pair(existing, todo, shift + BITS);
+        case Node child -> child.put(todo, shift + BITS, added);
+        default -> throw new IllegalStateException();
+      };
+      return new Node(bitmap, copy, size);
+    }
+
+    private static Node pair(TodoEntity first, TodoEntity second, int shift) {
+      var firstBit = bit(first.id(), shift);
+      var secondBit = bit(second.id(), shift);
+      if (firstBit == secondBit) {
+        return new Node(firstBit, new Object[] { pair(first, second, shift + BITS) }, 2);
+      }
+      var slots = Integer.compareUnsigned(firstBit, secondBit) < 0
+        ? new Object[] { first, second }
+        : new Object[] { second, first };
+      return new Node(firstBit | secondBit, slots, 2);
+    }
+
+    // returns the node without the id, the only todo left below root or null
+    Object remove(int id, int shift) {
+      var bit = bit(id, shift);
+      var index = index(bit);
+      var child = switch (slots[index]) {
+        case TodoEntity _ -> null;
+        case Node node -> node.remove(id, shift + BITS);
+        default -> throw new IllegalStateException();
+      };
+      if (child == null) {
+        if (slots.length == 2 && shift > 0 && slots[1 - index] instanceof TodoEntity last) {
+          return last;
+        }
+        var copy = new Object[slots.length - 1];
+        System.arraycopy(slots, 0, copy, 0, index);
+        System.arraycopy(slots, index + 1, copy, index, slots.length - index - 1);
+        return copy.length == 0 && shift > 0 ? null : new Node(bitmap & ~bit, copy, size - 1);
+      }
+      if (slots.length == 1 && shift > 0 && child instanceof TodoEntity) {
+        return child;
+      }
+      var copy = slots.clone();
+      copy[index] = child;
+      return new Node(bitmap, copy, size - 1);
+    }
+
+    void forEach(Consumer<TodoEntity> action) {
+      for (var slot : slots) {
+        switch (slot) {
+          case TodoEntity todo -> action.accept(todo);
+          case Node child -> child.forEach(action);
+          default -> throw new IllegalStateException();
+        }
+      }
+    }
+
+    TodoEntity get(int position) {
+      var node = this;
+      while (true) {
+        for (var slot : node.slots) {
+          if (slot instanceof Node child) {
+            if (position < child.size) {
+              node = child;
+              break;
+            }
+            position -= child.size;
+          } else if (position-- == 0) {
+            return (TodoEntity) slot;
+          }
+        }
+      }
+    }
+  }
+
+  /*
+   * an immutable version of the repository, usable as a list
+   */
+  static final class Snapshot extends AbstractList<TodoEntity> implements RandomAccess {
+
+    private final Node root;
+
+    private Snapshot(Node root) {
+      this.root = root;
+    }
+
+    Optional<TodoEntity> find(int id) {
+      return Optional.ofNullable(root.find(id, 0));
+    }
+
+    @Override
+    public TodoEntity get(int index) {
+      if (index < 0 || index >= root.size) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return root.get(index);
+    }
+
+    @Override
+    public int size() {
+      return root.size;
+    }
+
+    @Override
+    public void forEach(Consumer<? super TodoEntity> action) {
+      root.forEach(action::accept);
+    }
+
+    @Override
+    public Object[] toArray() {
+      var array = new Object[root.size];
+      var position = new int[1];
+      root.forEach(todo -> array[position[0]++] = todo);
+      return array;
+    }
+
+    @Override
+    public <A> A[] toArray(A[] array) {
+      var result = array.length >= root.size ? array : Arrays.copyOf(array, root.size);
+      System.arraycopy(toArray(), 0, result, 0, root.size);
+      if (result.length > root.size) {
+        result[root.size] = null;
+      }
+      return result;
+    }
+  }
+
+  private final AtomicReference<Node> root = new AtomicReference<>(Node.EMPTY);
+  private final PageIndex pages = new PageIndex();
+
+  Snapshot snapshot() {
+    return new Snapshot(root.get());
+  }
+
+  @Override
+  public void create(TodoEntity todo) {
+    while (true) {
+      var current = root.get();
+      var added = current.find(todo.id(), 0) == null;
+      if (root.compareAndSet(current, current.put(todo, 0, added))) {
+        pages.add(todo.id());
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void createAll(List<TodoEntity> todos) {
+    while (true) {
+      var current = root.get();
+      var next = current;
+      for (var todo : todos) {
+        next = next.put(todo, 0, next.find(todo.id(), 0) == null);
+      }
+      if (root.compareAndSet(current, next)) {
+        todos.forEach(todo -> pages.add(todo.id()));
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void update(int id, UnaryOperator<TodoEntity> update) {
+    while (true) {
+      var current = root.get();
+      var todo = current.find(id, 0);
+      if (todo == null || root.compareAndSet(current, current.put(update.apply(todo), 0, false))) {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    return Optional.ofNullable(root.get().find(id, 0));
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    return snapshot();
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    root.get().forEach(action);
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    return pages.page(after, size, this::get);
+  }
+
+  @Override
+  public void delete(int id) {
+    while (true) {
+      var current = root.get();
+      if (current.find(id, 0) == null) {
+        return;
+      }
+      if (root.compareAndSet(current, (Node) current.remove(id, 0))) {
+        pages.remove(id, this::get);
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void deleteAll() {
+    root.set(Node.EMPTY);
+    pages.clear(this::get);
+  }
+
+  private TodoEntity get(int id) {
+    return root.get().find(id, 0);
+  }
+}
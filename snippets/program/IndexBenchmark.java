@@ -0,0 +1,38 @@
+package program;
+
+import static program.Todo.State.COMPLETED;
+import static program.Todo.State.NOT_COMPLETED;
+
+import bench.Bench;
+import program.Todo.TodoEntity;
+
+final class IndexBenchmark {
+
+  static final int TODOS = 100_000;
+
+  static <R extends Todo.Repository> R fill(R repository, int completedEvery) {
+    for (int id = 0; id < TODOS; id++) {
+      var state = id % completedEvery == 0 ? COMPLETED : NOT_COMPLETED;
+      repository.create(new TodoEntity(id, String.format("%05d todo", id), state));
+    }
+    return repository;
+  }
+
+  static void main() {
+    for (var completedEvery : new int[] { 100, 10, 2 }) {
+      var selectivity = 100 / completedEvery + "%";
+      var scan = fill(new ConcurrentRepository(), completedEvery);
+      var indexed = fill(new IndexedRepository(new ConcurrentRepository()), completedEvery);
+      Bench.run("scan findByState " + selectivity, () -> scan.findByState(COMPLETED));
+      Bench.run("indexed findByState " + selectivity, () -> indexed.findByState(COMPLETED));
+    }
+
+    var scan = fill(new ConcurrentRepository(), 2);
+    var indexed = fill(new IndexedRepository(new ConcurrentRepository()), 2);
+    for (var prefix : new String[] { "0000", "000", "00", "0" }) {
+      var selectivity = scan.findByTitlePrefix(prefix).size() * 100.0 / TODOS + "%";
+      Bench.run("scan findByTitlePrefix " + selectivity, () -> scan.findByTitlePrefix(prefix));
+      Bench.run("indexed findByTitlePrefix " + selectivity, () -> indexed.findByTitlePrefix(prefix));
+    }
+  }
+}
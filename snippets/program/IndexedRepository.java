@@ -0,0 +1,182 @@
+package program;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+import program.Todo.Page;
+import program.Todo.State;
+import program.Todo.TodoEntity;
+
+/*
+ * keeps a set of ids per state and a sorted title index on top of any
+ * repository, so FindByState and FindByTitlePrefix only touch the matching
+ * todos instead of scanning all of them.
+ *
+ * Only writes take the monitor, to keep the indexes in step with the
+ * repository; reads go straight to the repository and to concurrent index
+ * maps. A write indexes the new todo before it unindexes the old one, so a
+ * read may find an id under both, and only keeps the todos that match.
+ */
+final class IndexedRepository implements Todo.Repository {
+
+  private final Todo.Repository repository;
+  private final EnumMap<State, Set<Integer>> byState = new EnumMap<>(State.class);
+  private final ConcurrentSkipListMap<String, Set<Integer>> byTitle = new ConcurrentSkipListMap<>();
+
+  IndexedRepository(Todo.Repository repository) {
+    this.repository = repository;
+    for (var state : State.values()) {
+      byState.put(state, ConcurrentHashMap.newKeySet());
+    }
+    repository.forEach(this::index);
+  }
+
+  @Override
+  public synchronized void create(TodoEntity todo) {
+    var previous = repository.find(todo.id());
+    repository.create(todo);
+    reindex(previous, todo);
+  }
+
+  // one batch for the backend; ids repeated in the batch are indexed with their last todo
+  @Override
+  public synchronized void createAll(List<TodoEntity> todos) {
+    var latest = new LinkedHashMap<Integer, TodoEntity>();
+    todos.forEach(todo -> latest.put(todo.id(), todo));
+    var previous = new ArrayList<Optional<TodoEntity>>(latest.size());
+    latest.keySet().forEach(id -> previous.add(repository.find(id)));
+    repository.createAll(todos);
+    var next = previous.iterator();
+    latest.values().forEach(todo -> reindex(next.next(), todo));
+  }
+
+  @Override
+  public synchronized void update(int id, UnaryOperator<TodoEntity> update) {
+    var previous = repository.find(id);
+    if (previous.isPresent()) {
+      repository.update(id, update);
+      repository.find(id).ifPresentOrElse(todo -> reindex(previous, todo), () -> unindex(previous.get()));
+    }
+  }
+
+  @Override
+  public synchronized void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+    var previous = new ArrayList<TodoEntity>(updates.size());
+    updates.keySet().forEach(id -> repository.find(id).ifPresent(previous::add));
+    repository.updateAll(updates);
+    for (var todo : previous) {
+      repository.find(todo.id()).ifPresentOrElse(current -> reindex(Optional.of(todo), current), () -> unindex(todo));
+    }
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    return repository.find(id);
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    return repository.findAll();
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    repository.forEach(action);
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    return repository.findPage(after, size);
+  }
+
+  @Override
+  public List<TodoEntity> findByState(State state) {
+    return materialize(byState.get(state), todo -> todo.state() == state);
+  }
+
+  @Override
+  public List<TodoEntity> findByTitlePrefix(String prefix) {
+    var ids = new ArrayList<Integer>();
+    for (var entry : byTitle.tailMap(prefix, true).entrySet()) {
+      if (!entry.getKey().startsWith(prefix)) {
+        break;
+      }
+      ids.addAll(entry.getValue());
+    }
+    return materialize(ids, todo -> todo.title().startsWith(prefix));
+  }
+
+  @Override
+  public synchronized void delete(int id) {
+    var previous = repository.find(id);
+    repository.delete(id);
+    previous.ifPresent(this::unindex);
+  }
+
+  @Override
+  public synchronized void deleteMany(Collection<Integer> ids) {
+    var previous = new ArrayList<TodoEntity>(ids.size());
+    ids.forEach(id -> repository.find(id).ifPresent(previous::add));
+    repository.deleteMany(ids);
+    previous.forEach(this::unindex);
+  }
+
+  @Override
+  public synchronized void deleteAll() {
+    repository.deleteAll();
+    byState.values().forEach(Set::clear);
+    byTitle.clear();
+  }
+
+  private List<TodoEntity> materialize(Collection<Integer> ids, Predicate<TodoEntity> matches) {
+    var result = new ArrayList<TodoEntity>(ids.size());
+    for (var id : ids) {
+      repository.find(id).filter(matches).ifPresent(result::add);
+    }
+    return List.copyOf(result);
+  }
+
+  private void reindex(Optional<TodoEntity> previous, TodoEntity todo) {
+    index(todo);
+    previous.ifPresent(old -> {
+      if (old.state() != todo.state()) {
+        byState.get(old.state()).remove(old.id());
+      }
+      if (!old.title().equals(todo.title())) {
+        removeTitle(old);
+      }
+    });
+  }
+
+  private void index(TodoEntity todo) {
+    byState.get(todo.state()).add(todo.id());
+    byTitle.computeIfAbsent(todo.title(), _ -> ConcurrentHashMap.newKeySet()).add(todo.id());
+  }
+
+  private void unindex(TodoEntity todo) {
+    byState.get(todo.state()).remove(todo.id());
+    removeTitle(todo);
+  }
+
+  private void removeTitle(TodoEntity todo) {
+    var ids = byTitle.get(todo.title());
+    if (ids != null) {
+      ids.remove(todo.id());
+      if (ids.isEmpty()) {
+        byTitle.remove(todo.title());
+      }
+    }
+  }
+}
@@ -0,0 +1,252 @@
+package program;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import program.Todo.Page;
+import program.Todo.State;
+import program.Todo.TodoEntity;
+
+/*
+ * https://en.wikipedia.org/wiki/Open_addressing
+ *
+ * int keys with linear probing and backward shift deletion. Every slot keeps
+ * the state as a byte and the title as an (offset, length) pair into a shared
+ * UTF-8 arena, on heap or off heap. TodoEntity instances are only created when
+ * they leave the repository. Not thread safe, like Todo.InMemory.
+ */
+final class IntMapRepository implements Todo.Repository {
+
+  private static final byte FREE = 0;
+  private static final State[] STATES = State.values();
+  private static final float LOAD_FACTOR = 0.7f;
+
+  private final boolean offHeap;
+
+  private int[] keys;
+  private byte[] states;
+  private int[] offsets;
+  private int[] lengths;
+  private int size;
+
+  private ByteBuffer arena;
+  private int garbage;
+
+  private final PageIndex pages = new PageIndex();
+
+  IntMapRepository() {
+    this(1024, false);
+  }
+
+  IntMapRepository(int expectedSize, boolean offHeap) {
+    this.offHeap = offHeap;
+    allocate(capacityFor(expectedSize));
+    this.arena = allocateArena(Math.max(1024, expectedSize * 16));
+  }
+
+  int size() {
+    return size;
+  }
+
+  @Override
+  public void create(TodoEntity todo) {
+    put(todo.id(), todo);
+  }
+
+  @Override
+  public void update(int id, UnaryOperator<TodoEntity> update) {
+    var slot = find(keys, states, id);
+    if (states[slot] != FREE) {
+      put(id, update.apply(materialize(slot)));
+    }
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    return Optional.ofNullable(get(id));
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    var result = new ArrayList<TodoEntity>(size);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (states[slot] != FREE) {
+        result.add(materialize(slot));
+      }
+    }
+    return List.copyOf(result);
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (states[slot] != FREE) {
+        action.accept(materialize(slot));
+      }
+    }
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    return pages.page(after, size, this::get);
+  }
+
+  @Override
+  public void delete(int id) {
+    var slot = find(keys, states, id);
+    if (states[slot] == FREE) {
+      return;
+    }
+    garbage += lengths[slot];
+    size--;
+    // not thread safe, so no create races the delete
+    pages.remove(id, _ -> null);
+    var mask = keys.length - 1;
+    var next = slot;
+    while (true) {
+      states[slot] = FREE;
+      int home;
+      do {
+        next = (next + 1) & mask;
+        if (states[next] == FREE) {
+          return;
+        }
+        home = hash(keys[next]) & mask;
+      } while (slot <= next ? slot < home && home <= next : slot < home || home <= next);
+      move(next, slot);
+      slot = next;
+    }
+  }
+
+  @Override
+  public void deleteAll() {
+    allocate(capacityFor(0));
+    arena.clear();
+    size = 0;
+    garbage = 0;
+    pages.clear(this::get);
+  }
+
+  private void put(int id, TodoEntity todo) {
+    if (size + 1 > keys.length * LOAD_FACTOR) {
+      resize(keys.length * 2);
+    }
+    var title = todo.title().getBytes(UTF_8);
+    // appending may compact, which copies every live title, the replaced one included
+    var offset = append(title);
+    var slot = find(keys, states, id);
+    if (states[slot] == FREE) {
+      size++;
+      pages.add(id);
+    } else {
+      garbage += lengths[slot];
+    }
+    keys[slot] = id;
+    states[slot] = (byte) (todo.state().ordinal() + 1);
+    offsets[slot] = offset;
+    lengths[slot] = title.length;
+  }
+
+  private TodoEntity get(int id) {
+    var slot = find(keys, states, id);
+    return states[slot] == FREE ? null : materialize(slot);
+  }
+
+  private TodoEntity materialize(int slot) {
+    var title = new byte[lengths[slot]];
+    arena.get(offsets[slot], title);
+    return new TodoEntity(keys[slot], new String(title, UTF_8), STATES[states[slot] - 1]);
+  }
+
+  private int append(byte[] title) {
+    if (arena.remaining() < title.length) {
+      compact(title.length);
+    }
+    var offset = arena.position();
+    arena.put(title);
+    return offset;
+  }
+
+  private void compact(int needed) {
+    var live = arena.position() - garbage;
+    var capacity = arena.capacity();
+    while (capacity < live + needed + (live >> 1)) {
+      capacity += capacity >> 1;
+    }
+    var target = allocateArena(capacity);
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (states[slot] != FREE) {
+        var offset = target.position();
+        target.put(target.position(), arena, offsets[slot], lengths[slot]);
+        target.position(offset + lengths[slot]);
+        offsets[slot] = offset;
+      }
+    }
+    arena = target;
+    garbage = 0;
+  }
+
+  private void resize(int capacity) {
+    var oldKeys = keys;
+    var oldStates = states;
+    var oldOffsets = offsets;
+    var oldLengths = lengths;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldStates[i] != FREE) {
+        var slot = find(keys, states, oldKeys[i]);
+        keys[slot] = oldKeys[i];
+        states[slot] = oldStates[i];
+        offsets[slot] = oldOffsets[i];
+        lengths[slot] = oldLengths[i];
+      }
+    }
+  }
+
+  private void move(int from, int to) {
+    keys[to] = keys[from];
+    states[to] = states[from];
+    offsets[to] = offsets[from];
+    lengths[to] = lengths[from];
+  }
+
+  private void allocate(int capacity) {
+    keys = new int[capacity];
+    states = new byte[capacity];
+    offsets = new int[capacity];
+    lengths = new int[capacity];
+  }
+
+  private ByteBuffer allocateArena(int capacity) {
+    return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+
+  private static int find(int[] keys, byte[] states, int id) {
+    var mask = keys.length - 1;
+    var slot = hash(id) & mask;
+    while (states[slot] != FREE && keys[slot] != id) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static int hash(int id) {
+    var h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    var capacity = 16;
+    while (capacity * LOAD_FACTOR < expectedSize) {
+      capacity *= 2;
+    }
+    return capacity;
+  }
+}
@@ -0,0 +1,112 @@
+package program;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+import program.Todo.Listener;
+import program.Todo.Page;
+import program.Todo.State;
+import program.Todo.TodoEntity;
+
+/*
+ * tells its listeners about every write once it is done, so caches of reads
+ * can be invalidated. Every writer has to go through the same instance, like
+ * the sessions of a TodoServer sharing one repository.
+ */
+final class ListeningRepository implements Todo.Repository {
+
+  private final Todo.Repository repository;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  ListeningRepository(Todo.Repository repository) {
+    this.repository = repository;
+  }
+
+  void onWrite(Listener listener) {
+    listeners.add(listener);
+  }
+
+  @Override
+  public void create(TodoEntity todo) {
+    repository.create(todo);
+    written(todo.id());
+  }
+
+  @Override
+  public void createAll(List<TodoEntity> todos) {
+    repository.createAll(todos);
+    todos.forEach(todo -> written(todo.id()));
+  }
+
+  @Override
+  public void update(int id, UnaryOperator<TodoEntity> update) {
+    repository.update(id, update);
+    written(id);
+  }
+
+  @Override
+  public void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+    repository.updateAll(updates);
+    updates.keySet().forEach(this::written);
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    return repository.find(id);
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    return repository.findAll();
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    repository.forEach(action);
+  }
+
+  @Override
+  public List<TodoEntity> findByState(State state) {
+    return repository.findByState(state);
+  }
+
+  @Override
+  public List<TodoEntity> findByTitlePrefix(String prefix) {
+    return repository.findByTitlePrefix(prefix);
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    return repository.findPage(after, size);
+  }
+
+  @Override
+  public void delete(int id) {
+    repository.delete(id);
+    written(id);
+  }
+
+  @Override
+  public void deleteMany(Collection<Integer> ids) {
+    repository.deleteMany(ids);
+    ids.forEach(this::written);
+  }
+
+  @Override
+  public void deleteAll() {
+    repository.deleteAll();
+    listeners.forEach(Listener::cleared);
+  }
+
+  private void written(int id) {
+    for (var listener : listeners) {
+      listener.written(id);
+    }
+  }
+}
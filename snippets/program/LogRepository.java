@@ -0,0 +1,454 @@
+package program;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import program.Todo.Page;
+import program.Todo.State;
+import program.Todo.TodoEntity;
+
+/*
+ * https://en.wikipedia.org/wiki/Write-ahead_logging
+ *
+ * every write is appended to a memory mapped segment and applied to an in
+ * memory index that serves all the reads. When a segment is full the whole
+ * index is written to a snapshot and the old segments are deleted, so
+ * recovery reads one snapshot and replays at most one segment.
+ *
+ * With commitEvery = 1 a write returns once it is on disk, and writers that
+ * wait at the same time share one force (group commit). With a larger
+ * commitEvery writes are acknowledged before they are durable: the segment
+ * is forced every commitEvery writes, so a crash loses up to commitEvery - 1
+ * acknowledged writes. Batch writes and sync/close always force.
+ *
+ * Every record is framed by its length and a CRC32C, so recovery stops at a
+ * torn record after a crash and truncates the log there.
+ */
+final class LogRepository implements Todo.Repository, AutoCloseable {
+
+  static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final int HEADER = 2 * Integer.BYTES;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  private static final byte CLEAR = 3;
+
+  private static final String SNAPSHOT = "snapshot.dat";
+  private static final State[] STATES = State.values();
+
+  private final Path directory;
+  private final int segmentSize;
+  private final int commitEvery;
+  private final ConcurrentHashMap<Integer, TodoEntity> index = new ConcurrentHashMap<>();
+  private final PageIndex pages = new PageIndex();
+  private final CRC32C crc = new CRC32C();
+
+  private int segmentNumber;
+  private MappedByteBuffer segment;
+  private int uncommitted;
+
+  // sequence numbers of the last record appended and the last one forced
+  private long appended;
+  private long durable;
+  private boolean forcing;
+
+  LogRepository(Path directory) {
+    this(directory, SEGMENT_SIZE, 1);
+  }
+
+  LogRepository(Path directory, int segmentSize, int commitEvery) {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.commitEvery = commitEvery;
+    try {
+      Files.createDirectories(directory);
+      recover();
+      index.keySet().forEach(pages::add);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void create(TodoEntity todo) {
+    long sequence;
+    synchronized (this) {
+      appendPut(todo);
+      index.put(todo.id(), todo);
+      pages.add(todo.id());
+      sequence = committed();
+    }
+    awaitDurable(sequence);
+  }
+
+  @Override
+  public synchronized void createAll(List<TodoEntity> todos) {
+    for (var todo : todos) {
+      appendPut(todo);
+      index.put(todo.id(), todo);
+      pages.add(todo.id());
+    }
+    sync();
+  }
+
+  @Override
+  public void update(int id, UnaryOperator<TodoEntity> update) {
+    long sequence;
+    synchronized (this) {
+      if (!applyUpdate(id, update)) {
+        return;
+      }
+      sequence = committed();
+    }
+    awaitDurable(sequence);
+  }
+
+  @Override
+  public synchronized void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+    updates.forEach(this::applyUpdate);
+    sync();
+  }
+
+  @Override
+  public Optional<TodoEntity> find(int id) {
+    return Optional.ofNullable(index.get(id));
+  }
+
+  @Override
+  public List<TodoEntity> findAll() {
+    return List.copyOf(index.values());
+  }
+
+  @Override
+  public void forEach(Consumer<TodoEntity> action) {
+    index.values().forEach(action);
+  }
+
+  @Override
+  public Page findPage(OptionalInt after, int size) {
+    return pages.page(after, size, index::get);
+  }
+
+  @Override
+  public void delete(int id) {
+    long sequence;
+    synchronized (this) {
+      if (!applyDelete(id)) {
+        return;
+      }
+      sequence = committed();
+    }
+    awaitDurable(sequence);
+  }
+
+  @Override
+  public synchronized void deleteMany(Collection<Integer> ids) {
+    ids.forEach(this::applyDelete);
+    sync();
+  }
+
+  @Override
+  public void deleteAll() {
+    long sequence;
+    synchronized (this) {
+      var start = begin(1);
+      segment.put(CLEAR);
+      end(start);
+      index.clear();
+      pages.clear(index::get);
+      sequence = committed();
+    }
+    awaitDurable(sequence);
+  }
+
+  synchronized void sync() {
+    segment.force();
+    uncommitted = 0;
+    durable = appended;
+  }
+
+  synchronized void snapshot() {
+    try {
+      writeSnapshot();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    sync();
+  }
+
+  private boolean applyUpdate(int id, UnaryOperator<TodoEntity> update) {
+    var current = index.get(id);
+    if (current == null) {
+      return false;
+    }
+    var updated = update.apply(current);
+    appendPut(updated);
+    index.put(id, updated);
+    return true;
+  }
+
+  private boolean applyDelete(int id) {
+    if (!index.containsKey(id)) {
+      return false;
+    }
+    var start = begin(1 + Integer.BYTES);
+    segment.put(DELETE).putInt(id);
+    end(start);
+    index.remove(id);
+    pages.remove(id, index::get);
+    return true;
+  }
+
+  private void appendPut(TodoEntity todo) {
+    var title = todo.title().getBytes(UTF_8);
+    var start = begin(1 + Integer.BYTES + 1 + Integer.BYTES + title.length);
+    segment
+      .put(PUT)
+      .putInt(todo.id())
+      .put((byte) todo.state().ordinal())
+      .putInt(title.length)
+      .put(title);
+    end(start);
+  }
+
+  // reserves a record and leaves the segment at its payload
+  private int begin(int payload) {
+    var bytes = HEADER + payload;
+    if (bytes > segmentSize) {
+      throw new IllegalArgumentException("record too large: " + bytes + " bytes");
+    }
+    if (segment.remaining() < bytes) {
+      snapshot();
+    }
+    var start = segment.position();
+    segment.position(start + HEADER);
+    return start;
+  }
+
+  private void end(int start) {
+    var length = segment.position() - start - HEADER;
+    crc.reset();
+    crc.update(segment.slice(start + HEADER, length));
+    segment.putInt(start + Integer.BYTES, (int) crc.getValue());
+    segment.putInt(start, length);
+  }
+
+  // the sequence number to wait for, or 0 when the write is acknowledged before it is durable
+  private long committed() {
+    appended++;
+    if (commitEvery == 1) {
+      return appended;
+    }
+    if (++uncommitted >= commitEvery) {
+      sync();
+    }
+    return 0;
+  }
+
+  /*
+   * the first writer to wait forces everything appended so far without holding
+   * the monitor, so writers arriving meanwhile append and wait for the next force
+   */
+  private void awaitDurable(long sequence) {
+    MappedByteBuffer forced;
+    long target;
+    synchronized (this) {
+      while (durable < sequence && forcing) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("interrupted before the write was durable", e);
+        }
+      }
+      if (durable >= sequence) {
+        return;
+      }
+      forcing = true;
+      forced = segment;
+      target = appended;
+    }
+    try {
+      forced.force();
+    } finally {
+      synchronized (this) {
+        forcing = false;
+        durable = Math.max(durable, target);
+        notifyAll();
+      }
+    }
+  }
+
+  private void recover() throws IOException {
+    var snapshot = directory.resolve(SNAPSHOT);
+    var covered = -1;
+    if (Files.exists(snapshot)) {
+      try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot)))) {
+        covered = input.readInt();
+        var count = input.readInt();
+        for (int i = 0; i < count; i++) {
+          var id = input.readInt();
+          var state = STATES[input.readByte()];
+          var title = new byte[input.readInt()];
+          input.readFully(title);
+          index.put(id, new TodoEntity(id, new String(title, UTF_8), state));
+        }
+      }
+    }
+    var last = covered + 1;
+    var position = 0;
+    for (var number : segments()) {
+      if (number <= covered) {
+        Files.delete(segmentPath(number));
+        continue;
+      }
+      position = replay(number);
+      last = number;
+    }
+    openSegment(last);
+    segment.position(position);
+  }
+
+  /*
+   * stops at the first zero length, where appending stopped, or at the first
+   * record that is cut short or fails its CRC, which is zeroed with
+   * everything after it
+   */
+  private int replay(int number) throws IOException {
+    try (var channel = FileChannel.open(segmentPath(number), READ, WRITE)) {
+      var buffer = channel.map(MapMode.READ_WRITE, 0, channel.size());
+      var position = 0;
+      while (buffer.limit() - position >= HEADER) {
+        var length = buffer.getInt(position);
+        if (length == 0) {
+          return position;
+        }
+        if (length < 0 || length > buffer.limit() - position - HEADER
+            || !valid(buffer.slice(position + HEADER, length), buffer.getInt(position + Integer.BYTES))) {
+          truncate(buffer, position);
+          return position;
+        }
+        apply(buffer.slice(position + HEADER, length));
+        position += HEADER + length;
+      }
+      return position;
+    }
+  }
+
+  private boolean valid(ByteBuffer record, int expected) {
+    crc.reset();
+    crc.update(record);
+    return (int) crc.getValue() == expected;
+  }
+
+  private void apply(ByteBuffer record) {
+    switch (record.get()) {
+      case PUT -> {
+        var id = record.getInt();
+        var state = STATES[record.get()];
+        var title = new byte[record.getInt()];
+        record.get(title);
+        index.put(id, new TodoEntity(id, new String(title, UTF_8), state));
+      }
+      case DELETE -> index.remove(record.getInt());
+      case CLEAR -> index.clear();
+      default -> throw new IllegalStateException("unknown record type");
+    }
+  }
+
+  private static void truncate(MappedByteBuffer buffer, int position) {
+    var zeros = new byte[64 * 1024];
+    for (int i = position; i < buffer.limit(); i += zeros.length) {
+      buffer.put(i, zeros, 0, Math.min(zeros.length, buffer.limit() - i));
+    }
+    buffer.force();
+  }
+
+  private void writeSnapshot() throws IOException {
+    var covered = segmentNumber;
+    segment.force();
+    durable = appended;
+    var temporary = directory.resolve(SNAPSHOT + ".tmp");
+    try (var output = new DataOutputStream(new BufferedOutputStream(
+        Files.newOutputStream(temporary, CREATE, WRITE, TRUNCATE_EXISTING), 1 << 16))) {
+      var entries = List.copyOf(index.values());
+      output.writeInt(covered);
+      output.writeInt(entries.size());
+      for (var todo : entries) {
+        var title = todo.title().getBytes(UTF_8);
+        output.writeInt(todo.id());
+        output.writeByte(todo.state().ordinal());
+        output.writeInt(title.length);
+        output.write(title);
+      }
+    }
+    try (var channel = FileChannel.open(temporary, WRITE)) {
+      channel.force(true);
+    }
+    Files.move(temporary, directory.resolve(SNAPSHOT), REPLACE_EXISTING, ATOMIC_MOVE);
+    // the rename is only durable once the directory is, and until then the segments are still needed
+    try (var channel = FileChannel.open(directory, READ)) {
+      channel.force(true);
+    }
+    for (var number : segments()) {
+      if (number <= covered) {
+        Files.delete(segmentPath(number));
+      }
+    }
+    openSegment(covered + 1);
+  }
+
+  private void openSegment(int number) throws IOException {
+    try (var channel = FileChannel.open(segmentPath(number), CREATE, READ, WRITE)) {
+      segment = channel.map(MapMode.READ_WRITE, 0, segmentSize);
+    }
+    segmentNumber = number;
+    uncommitted = 0;
+  }
+
+  private List<Integer> segments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(path -> path.getFileName().toString())
+          .filter(name -> name.startsWith("segment-") && name.endsWith(".log"))
+          .map(name -> Integer.parseInt(name, 8, name.length() - 4, 10))
+          .sorted()
+          .toList();
+    }
+  }
+
+  private Path segmentPath(int number) {
+    return directory.resolve(String.format("segment-%08d.log", number));
+  }
+}
@@ -0,0 +1,123 @@
+package program;
+
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * https://github.com/HdrHistogram/HdrHistogram
+ */
+final class Metrics {
+
+  private final Map<Class<?>, Histogram> instructions = new ConcurrentHashMap<>();
+  private final LongAdder binds = new LongAdder();
+
+  void bind() {
+    binds.increment();
+  }
+
+  void bind(int count) {
+    binds.add(count);
+  }
+
+  void record(Class<?> instruction, long nanos) {
+    instructions.computeIfAbsent(instruction, _ -> new Histogram()).record(nanos);
+  }
+
+  Snapshot snapshot() {
+    return new Snapshot(binds.sum(), instructions.entrySet().stream()
+        .collect(toUnmodifiableMap(Map.Entry::getKey, entry -> entry.getValue().snapshot())));
+  }
+
+  record Snapshot(long binds, Map<Class<?>, Latency> instructions) {
+
+    Latency instruction(Class<?> instruction) {
+      return instructions.getOrDefault(instruction, Latency.EMPTY);
+    }
+
+    long count(Class<?> instruction) {
+      return instruction(instruction).count();
+    }
+  }
+
+  record Latency(long count, long totalNanos, long maxNanos, long[] buckets) {
+
+    static final Latency EMPTY = new Latency(0, 0, 0, new long[Histogram.BUCKETS]);
+
+    double meanNanos() {
+      return count == 0 ? 0 : (double) totalNanos / count;
+    }
+
+    long percentile(double percentile) {
+      var target = (long) Math.ceil(count * percentile / 100);
+      long seen = 0;
+      for (int i = 0; i < buckets.length; i++) {
+        seen += buckets[i];
+        if (seen >= target && seen > 0) {
+          return Math.min(Histogram.upperBound(i), maxNanos);
+        }
+      }
+      return maxNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("count=%d mean=%.0fns p50=%dns p99=%dns max=%dns",
+          count, meanNanos(), percentile(50), percentile(99), maxNanos);
+    }
+  }
+
+  /*
+   * log-linear buckets: 8 sub-buckets per power of two, so any recorded
+   * value is reported with an error below 12.5%
+   */
+  static final class Histogram {
+
+    static final int SUB_BUCKET_BITS = 3;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long nanos) {
+      var value = Math.max(0, nanos);
+      buckets.incrementAndGet(index(value));
+      count.increment();
+      total.add(value);
+      max.accumulate(value);
+    }
+
+    Latency snapshot() {
+      var copy = new long[BUCKETS];
+      for (int i = 0; i < BUCKETS; i++) {
+        copy[i] = buckets.get(i);
+      }
+      return new Latency(count.sum(), total.sum(), max.get(), copy);
+    }
+
+    static int index(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      var exponent = 63 - Long.numberOfLeadingZeros(value);
+      var subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+      if (index < SUB_BUCKETS) {
+        return index;
+      }
+      var exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      var subBucket = index % SUB_BUCKETS;
+      return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+  }
+}
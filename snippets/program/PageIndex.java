@@ -0,0 +1,56 @@
+package program;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntFunction;
+
+import program.Todo.Page;
+import program.Todo.TodoEntity;
+
+/*
+ * the ids of a repository in order, kept by every write, so a page is a walk
+ * from its cursor of at most size live ids instead of a scan of the
+ * repository. Repositories call add once a todo is stored and remove once it
+ * is deleted; ids whose todo is gone are skipped.
+ */
+final class PageIndex {
+
+  private final ConcurrentSkipListSet<Integer> ids = new ConcurrentSkipListSet<>();
+
+  void add(int id) {
+    ids.add(id);
+  }
+
+  // a create racing with the delete may have stored the id again
+  void remove(int id, IntFunction<TodoEntity> find) {
+    ids.remove(id);
+    if (find.apply(id) != null) {
+      ids.add(id);
+    }
+  }
+
+  void clear(IntFunction<TodoEntity> find) {
+    ids.removeIf(id -> find.apply(id) == null);
+  }
+
+  Page page(OptionalInt after, int size, IntFunction<TodoEntity> find) {
+    if (size < 1) {
+      throw new IllegalArgumentException("size must be positive: " + size);
+    }
+    var from = after.isPresent() ? ids.tailSet(after.getAsInt(), false) : ids;
+    var todos = new ArrayList<TodoEntity>();
+    for (var id : from) {
+      var todo = find.apply(id);
+      if (todo == null) {
+        continue;
+      }
+      if (todos.size() == size) {
+        return new Page(List.copyOf(todos), OptionalInt.of(todos.getLast().id()));
+      }
+      todos.add(todo);
+    }
+    return new Page(List.copyOf(todos), OptionalInt.empty());
+  }
+}
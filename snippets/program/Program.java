@@ -1,49 +1,438 @@
 package program;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 sealed interface Program<S, T> {
 
   record Done<S, T>(T value) implements Program<S, T> {}
 
   record AndThen<S, T, R>(
-      Program<S, T> current, 
+      Program<S, T> current,
       Function<T, Program<S, R>> next) implements Program<S, R> {
-    public R safeEval(S state) {
-      return next.apply(current.eval(state)).eval(state);
+    @SuppressWarnings("unchecked")
+    Program<S, R> resume(Object value) {
+      return next.apply((T) value);
+    }
+  }
+
+  record Then<S, T, R>(
+      Program<S, T> current,
+      Program<S, R> next) implements Program<S, R> {}
+
+  record Mapped<S, T, R>(
+      Program<S, T> current,
+      Function<T, R> mapper,
+      int fused) implements Program<S, R> {
+
+    static final int MAX_FUSED = 64;
+
+    @SuppressWarnings("unchecked")
+    R apply(Object value) {
+      return mapper.apply((T) value);
+    }
+
+    @Override
+    public <U> Program<S, U> map(Function<R, U> next) {
+      if (fused < MAX_FUSED) {
+        return new Mapped<>(current, mapper.andThen(next), fused + 1);
+      }
+      return new Mapped<>(this, next, 0);
+    }
+
+    @Override
+    public <U> Program<S, U> andThen(Function<R, Program<S, U>> next) {
+      if (fused < MAX_FUSED) {
+        return new AndThen<>(current, mapper.andThen(next));
+      }
+      return new AndThen<>(this, next);
     }
   }
 
   non-sealed interface Dsl<S, T> extends Program<S, T> {
      T handle(S state);
+
+     default CompletableFuture<T> handleAsync(S state) {
+       try {
+         return CompletableFuture.completedFuture(handle(state));
+       } catch (Throwable e) {
+         return CompletableFuture.failedFuture(e);
+       }
+     }
+  }
+
+  record Par<S, T>(List<Program<S, T>> programs, Executor executor) implements Dsl<S, List<T>> {
+    // throws the failure of the program, like eval would, not the CompletionException around it
+    @Override
+    public List<T> handle(S state) {
+      try {
+        return handleAsync(state).join();
+      } catch (CompletionException e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+            && cause.getCause() != null) {
+          cause = cause.getCause();
+        }
+        switch (cause) {
+          case RuntimeException failure -> throw failure;
+          case Error error -> throw error;
+          default -> throw e;
+        }
+      }
+    }
+
+    @Override
+    public CompletableFuture<List<T>> handleAsync(S state) {
+      var result = new CompletableFuture<List<T>>();
+      var futures = programs.stream().map(program -> program.evalAsync(state, executor)).toList();
+      for (var future : futures) {
+        future.whenComplete((_, error) -> {
+          if (error != null) {
+            result.completeExceptionally(error);
+          }
+        });
+      }
+      // the first failure, or cancelling the result, stops the programs still running
+      result.whenComplete((_, error) -> {
+        if (error != null) {
+          futures.forEach(future -> future.cancel(true));
+        }
+      });
+      CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+        .thenRun(() -> result.complete(futures.stream().map(CompletableFuture::join).toList()));
+      return result;
+    }
+  }
+
+  record Memoized<S, K, T>(Program<S, T> program, K key, Cache<K, T> cache) implements Dsl<S, T> {
+    @Override
+    public T handle(S state) {
+      var cached = cache.get(key);
+      if (cached.isPresent()) {
+        return cached.get();
+      }
+      // a write that invalidates the key while the program runs keeps its value out
+      var stamp = cache.stamp();
+      var value = program.eval(state);
+      if (value != null) {
+        cache.put(key, value, stamp);
+      }
+      return value;
+    }
   }
 
+  final class Lazy<S, T> implements Supplier<Program<S, T>> {
+
+    private final Supplier<Program<S, T>> factory;
+    private volatile Program<S, T> program;
+
+    private Lazy(Supplier<Program<S, T>> factory) {
+      this.factory = factory;
+    }
+
+    @Override
+    public Program<S, T> get() {
+      var result = program;
+      if (result == null) {
+        synchronized (this) {
+          result = program;
+          if (result == null) {
+            program = result = factory.get();
+          }
+        }
+      }
+      return result;
+    }
+  }
+
+  /*
+   * https://en.wikipedia.org/wiki/Trampoline_(computing)
+   */
   default T eval(S state) {
-    return switch (this) {
-      case Done<S, T>(T value) -> value;
-      case AndThen<S, ?, T> andThen -> andThen.safeEval(state);
-      case Dsl<S, T> dsl -> dsl.handle(state);
-    };
+    return run(this, state, null);
+  }
+
+  default T eval(S state, Metrics metrics) {
+    return run(this, state, metrics);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, T> T run(Program<S, T> program, S state, Metrics metrics) {
+    Deque<Program<S, ?>> stack = new ArrayDeque<>();
+    Program<S, ?> current = program;
+    while (true) {
+      switch (current) {
+        case Done<S, ?>(var value) -> {
+          if (stack.isEmpty()) {
+            return (T) value;
+          }
+          current = unwind(stack, value);
+        }
+        case AndThen<S, ?, ?> andThen -> {
+          if (metrics != null) {
+            metrics.bind();
+          }
+          stack.push(andThen);
+          current = andThen.current();
+        }
+        case Then<S, ?, ?> then -> {
+          if (metrics != null) {
+            metrics.bind();
+          }
+          stack.push(then);
+          current = then.current();
+        }
+        case Mapped<S, ?, ?> mapped -> {
+          stack.push(mapped);
+          current = mapped.current();
+        }
+        case Compiled<S, ?> compiled when metrics != null -> current = unwind(stack, compiled.handle(state, metrics));
+        case Dsl<S, ?> dsl when metrics != null -> {
+          var start = System.nanoTime();
+          var value = dsl.handle(state);
+          metrics.record(dsl.getClass(), System.nanoTime() - start);
+          current = unwind(stack, value);
+        }
+        case Dsl<S, ?> dsl -> current = unwind(stack, dsl.handle(state));
+      }
+    }
+  }
+
+  default CompletableFuture<T> evalAsync(S state) {
+    return evalAsync(state, Thread::startVirtualThread);
+  }
+
+  @SuppressWarnings("unchecked")
+  default CompletableFuture<T> evalAsync(S state, Executor executor) {
+    var result = new CompletableFuture<Object>();
+    executor.execute(() -> resume(this, new ArrayDeque<>(), state, result, executor));
+    return (CompletableFuture<T>) result;
+  }
+
+  /*
+   * the program goes on on the executor, not on the thread that completed the
+   * future, so blocking handlers keep running on its threads. Errors fail the
+   * result too, or its callers would wait forever.
+   */
+  private static <S> void resume(
+      Program<S, ?> current, Deque<Program<S, ?>> stack, S state, CompletableFuture<Object> result,
+      Executor executor) {
+    try {
+      // a cancelled or failed result stops the program at the next instruction
+      while (!result.isDone()) {
+        switch (current) {
+          case Done<S, ?>(var value) -> {
+            if (stack.isEmpty()) {
+              result.complete(value);
+              return;
+            }
+            current = unwind(stack, value);
+          }
+          case AndThen<S, ?, ?> andThen -> {
+            stack.push(andThen);
+            current = andThen.current();
+          }
+          case Then<S, ?, ?> then -> {
+            stack.push(then);
+            current = then.current();
+          }
+          case Mapped<S, ?, ?> mapped -> {
+            stack.push(mapped);
+            current = mapped.current();
+          }
+          case Dsl<S, ?> dsl -> {
+            var future = dsl.handleAsync(state);
+            if (!future.isDone()) {
+              future.whenCompleteAsync((value, error) -> {
+                if (error != null) {
+                  result.completeExceptionally(error);
+                } else {
+                  resume(new Done<>(value), stack, state, result, executor);
+                }
+              }, executor);
+              return;
+            }
+            current = unwind(stack, future.join());
+          }
+        }
+      }
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  private static <S> Program<S, ?> unwind(Deque<Program<S, ?>> stack, Object value) {
+    while (!stack.isEmpty()) {
+      switch (stack.pop()) {
+        case AndThen<S, ?, ?> andThen -> {
+          return andThen.resume(value);
+        }
+        case Then<S, ?, ?> then -> {
+          return then.next();
+        }
+        case Mapped<S, ?, ?> mapped -> value = mapped.apply(value);
+        default -> throw new IllegalStateException();
+      }
+    }
+    return new Done<>(value);
   }
 
   static <S, T> Program<S, T> done(T value) {
     return new Done<>(value);
   }
 
+  static <S, T> Program<S, T> lazy(Supplier<Program<S, T>> factory) {
+    var lazy = new Lazy<>(factory);
+    return new AndThen<S, Void, T>(new Done<>(null), _ -> lazy.get());
+  }
+
   static <S, T, U, R> Program<S, R> zip(Program<S, T> pt, Program<S, U> pu, BiFunction<T, U, R> mapper) {
     return pt.andThen(t -> pu.map(u -> mapper.apply(t, u)));
   }
 
+  static <S, T, U, R> Program<S, R> parZip(Program<S, T> pt, Program<S, U> pu, BiFunction<T, U, R> mapper) {
+    return parZip(pt, pu, mapper, Thread::startVirtualThread);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <S, T, U, R> Program<S, R> parZip(
+      Program<S, T> pt, Program<S, U> pu, BiFunction<T, U, R> mapper, Executor executor) {
+    var both = List.of((Program<S, Object>) pt, (Program<S, Object>) pu);
+    return parTraverse(both, executor).map(list -> mapper.apply((T) list.get(0), (U) list.get(1)));
+  }
+
+  static <S, T> Program<S, List<T>> parTraverse(List<Program<S, T>> programs) {
+    return parTraverse(programs, Thread::startVirtualThread);
+  }
+
+  static <S, T> Program<S, List<T>> parTraverse(List<Program<S, T>> programs, Executor executor) {
+    return new Par<>(List.copyOf(programs), executor);
+  }
+
   default <R> Program<S, R> map(Function<T, R> mapper) {
-    return andThen(mapper.andThen(Program::done));
+    return new Mapped<>(this, mapper, 0);
   }
 
   default <R> Program<S, R> andThen(Program<S, R> next) {
-    return andThen(_ -> next);
+    return new Then<>(this, next);
   }
 
   default <R> Program<S, R> andThen(Function<T, Program<S, R>> next) {
     return new AndThen<>(this, next);
   }
+
+  default <K> Program<S, T> memoize(K key, Cache<K, T> cache) {
+    return new Memoized<>(this, key, cache);
+  }
+
+  /*
+   * flattens every static sequence (Then nodes) and replaces each run of adjacent
+   * instructions accepted by mergeable with the single instruction built by merge.
+   * The merged instruction must produce the value of the last one in the run.
+   * Nodes are rebuilt from an explicit stack, so deep programs don't overflow.
+   */
+  @SuppressWarnings("unchecked")
+  static <S, T> Program<S, T> coalesce(
+      Program<S, T> program,
+      BiPredicate<Program<S, ?>, Program<S, ?>> mergeable,
+      Function<List<Program<S, ?>>, Program<S, ?>> merge) {
+    // pushed under the children of a node, to rebuild it once they are coalesced
+    record Rebuild(Program<?, ?> node, int children) {}
+
+    var pending = new ArrayDeque<Object>();
+    var coalesced = new ArrayList<Program<S, ?>>();
+    pending.push(program);
+    while (!pending.isEmpty()) {
+      var next = pending.pop();
+      switch (next) {
+        case Then<?, ?, ?> then -> {
+          var steps = steps(then);
+          pending.push(new Rebuild(then, steps.size()));
+          steps.reversed().forEach(pending::push);
+        }
+        case AndThen<?, ?, ?> andThen -> {
+          pending.push(new Rebuild(andThen, 1));
+          pending.push(andThen.current());
+        }
+        case Mapped<?, ?, ?> mapped -> {
+          pending.push(new Rebuild(mapped, 1));
+          pending.push(mapped.current());
+        }
+        case Rebuild(var node, var children) -> {
+          var last = coalesced.subList(coalesced.size() - children, coalesced.size());
+          var rebuilt = switch (node) {
+            case AndThen<?, ?, ?> andThen -> rebuild(andThen, last.getFirst());
+            case Mapped<?, ?, ?> mapped -> rebuild(mapped, last.getFirst());
+            default -> merge(last, mergeable, merge);
+          };
+          last.clear();
+          coalesced.add((Program<S, ?>) rebuilt);
+        }
+        default -> coalesced.add((Program<S, ?>) next);
+      }
+    }
+    return (Program<S, T>) coalesced.getFirst();
+  }
+
+  // the instructions of a static sequence, in order
+  private static List<Program<?, ?>> steps(Then<?, ?, ?> then) {
+    var steps = new ArrayList<Program<?, ?>>();
+    var pending = new ArrayDeque<Program<?, ?>>();
+    pending.push(then);
+    while (!pending.isEmpty()) {
+      var next = pending.pop();
+      if (next instanceof Then<?, ?, ?>(var current, var tail)) {
+        pending.push(tail);
+        pending.push(current);
+      } else {
+        steps.add(next);
+      }
+    }
+    return steps;
+  }
+
+  private static <S> Program<S, ?> merge(
+      List<Program<S, ?>> steps,
+      BiPredicate<Program<S, ?>, Program<S, ?>> mergeable,
+      Function<List<Program<S, ?>>, Program<S, ?>> merge) {
+    var merged = new ArrayList<Program<S, ?>>();
+    var run = new ArrayList<Program<S, ?>>();
+    for (var next : steps) {
+      if (!run.isEmpty() && !mergeable.test(run.getLast(), next)) {
+        merged.add(run.size() == 1 ? run.getFirst() : merge.apply(run));
+        run.clear();
+      }
+      run.add(next);
+    }
+    merged.add(run.size() == 1 ? run.getFirst() : merge.apply(run));
+    var result = merged.getFirst();
+    for (var next : merged.subList(1, merged.size())) {
+      result = result.andThen(next);
+    }
+    return result;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, T, R> Program<S, R> rebuild(AndThen<S, T, R> andThen, Program<?, ?> current) {
+    return new AndThen<>((Program<S, T>) current, andThen.next());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <S, T, R> Program<S, R> rebuild(Mapped<S, T, R> mapped, Program<?, ?> current) {
+    return new Mapped<>((Program<S, T>) current, mapped.mapper(), mapped.fused());
+  }
+
+  default Program<S, T> compile() {
+    return Compiled.compile(this);
+  }
 }
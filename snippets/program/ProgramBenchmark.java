@@ -0,0 +1,110 @@
+package program;
+
+import static program.Program.done;
+
+import java.util.function.Function;
+
+import bench.Bench;
+
+final class ProgramBenchmark {
+
+  record Input(String value) implements Program.Dsl<Void, String> {
+    @Override
+    public String handle(Void state) {
+      return value;
+    }
+  }
+
+  static class Stub implements Console.Service {
+
+    private int written;
+
+    @Override
+    public void writeLine(String line) {
+      written += line.length();
+    }
+
+    @Override
+    public String readLine() {
+      return "Toni";
+    }
+  }
+
+  static final class MenuStub extends Stub {
+    @Override
+    public String readLine() {
+      return "2";
+    }
+  }
+
+  static Program<Stub, Void> script() {
+    return Console.<Stub>prompt("What's your name?").andThen(Console::sayHello);
+  }
+
+  static Program<Void, Boolean> pipeline() {
+    return new Input("42")
+      .map(Integer::parseInt)
+      .map(n -> n * 2)
+      .map(n -> n + 1)
+      .andThen(n -> done(n > 0));
+  }
+
+  static Program<Void, Integer> leftNested(int binds) {
+    Program<Void, Integer> program = done(0);
+    for (int i = 0; i < binds; i++) {
+      program = program.andThen(n -> done(n + 1));
+    }
+    return program;
+  }
+
+  static Program<Void, Integer> rightNested(int binds) {
+    Function<Integer, Program<Void, Integer>> next = Program::done;
+    for (int i = 0; i < binds; i++) {
+      var tail = next;
+      next = n -> Program.<Void, Integer>done(n + 1).andThen(tail);
+    }
+    return Program.<Void, Integer>done(-1).andThen(next);
+  }
+
+  static void main() {
+    var script = script();
+    var stub = new Stub();
+    Bench.run("Program console script", () -> script.eval(stub));
+    var metrics = new Metrics();
+    Bench.run("Program console script instrumented", () -> script.eval(stub, metrics));
+    var snapshot = metrics.snapshot();
+    System.console().println("  binds: " + snapshot.binds());
+    snapshot.instructions().forEach(
+        (instruction, latency) -> System.console().println("  " + instruction.getSimpleName() + ": " + latency));
+
+    var context = new Todo.Context(new MenuStub());
+    var menu = Todo.printMenu();
+    var compiled = menu.compile();
+    Bench.run("Todo menu rebuilt", () -> Todo.printMenu().eval(context));
+    Bench.run("Todo menu tree", () -> menu.eval(context));
+    Bench.run("Todo menu compiled", () -> compiled.eval(context));
+    Bench.run("Todo menu hoisted", () -> Todo.MENU.eval(context));
+    Bench.run("Todo menu x1M rebuilt", () -> {
+      for (int i = 0; i < 1_000_000; i++) {
+        Todo.printMenu().eval(context);
+      }
+      return context;
+    });
+    Bench.run("Todo menu x1M hoisted", () -> {
+      for (int i = 0; i < 1_000_000; i++) {
+        Todo.MENU.eval(context);
+      }
+      return context;
+    });
+
+    var pipeline = pipeline();
+    Bench.run("eval map pipeline", () -> pipeline.eval(null));
+
+    for (int binds : new int[] { 1_000, 100_000, 1_000_000 }) {
+      var left = leftNested(binds);
+      var right = rightNested(binds);
+      Bench.run("eval left-nested " + binds, () -> left.eval(null));
+      Bench.run("eval right-nested " + binds, () -> right.eval(null));
+    }
+  }
+}
@@ -0,0 +1,184 @@
+package program;
+
+import static check.Checks.check;
+import static check.Checks.fails;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * building, compiling and running programs, sequentially and in parallel
+ */
+final class ProgramTest {
+
+  static final int DEPTH = 1_000_000;
+
+  record Lines(List<String> written) implements Console.Service {
+    @Override
+    public void writeLine(String line) {
+      written.add(line);
+    }
+  }
+
+  static Program<Void, Integer> countdown(int steps) {
+    return steps == 0 ? Program.done(0) : Program.<Void, Integer>done(steps - 1).andThen(ProgramTest::countdown);
+  }
+
+  // eval used to recurse through every AndThen, so a recursive program overflowed the Java stack
+  static void recursiveProgramsRunInConstantStack() {
+    check(countdown(10 * DEPTH).eval(null) == 0, "countdown");
+  }
+
+  // coalesce used to recurse through the current program of every AndThen and Mapped
+  static void coalesceDeepChain() {
+    var program = Console.<Console.Service>writeLine("a").andThen(Console.writeLine("b"));
+    for (int i = 0; i < DEPTH; i++) {
+      program = i % 2 == 0 ? program.andThen(Program::done) : program.map(value -> value);
+    }
+    var lines = new Lines(new ArrayList<>());
+    Console.coalesce(program).eval(lines);
+    check(lines.written().equals(List.of("a\nb")), "coalesced deep chain");
+  }
+
+  static Program<Void, Integer> chain(Program<Void, Integer> first) {
+    var program = first;
+    for (int i = 0; i < DEPTH; i++) {
+      program = i % 2 == 0 ? program.map(value -> value + 1) : program.andThen(Program.done(i));
+    }
+    return program;
+  }
+
+  // compile used to recurse, and to check again under every node whether it was static
+  static void compileDeepChain() {
+    var dynamic = chain(Program.<Void, Integer>done(0).andThen(Program::done));
+    check(dynamic.compile().eval(null).equals(dynamic.eval(null)), "compiled deep chain");
+    var fixed = chain(Program.done(0));
+    var compiled = fixed.compile();
+    check(compiled instanceof Compiled && compiled.eval(null).equals(fixed.eval(null)), "compiled static chain");
+  }
+
+  static Program<Void, Long> forever(AtomicLong steps) {
+    Program.Dsl<Void, Long> step = _ -> steps.incrementAndGet();
+    return step.andThen(_ -> forever(steps));
+  }
+
+  // the other programs of a Par used to run on after the first one failed
+  static void parStopsOnFailure() throws InterruptedException {
+    var steps = new AtomicLong();
+    Program.Dsl<Void, Long> failing = _ -> {
+      throw new IllegalStateException("failed");
+    };
+    var executor = Executors.newFixedThreadPool(2);
+    try {
+      var par = Program.parTraverse(List.of(failing, forever(steps)), executor);
+      var failure = fails(CompletionException.class, () -> par.evalAsync(null, executor).join(), "par should fail");
+      check(failure.getCause() instanceof IllegalStateException, "first failure");
+      Thread.sleep(50);
+      var stopped = steps.get();
+      Thread.sleep(50);
+      check(steps.get() == stopped, "sibling cancelled");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  // a compiled program used to be recorded as a single Compiled instruction
+  static void compiledProgramsKeepMetrics() {
+    var context = new Todo.Context(new Console.Service() {
+      @Override
+      public void writeLine(String line) {}
+
+      @Override
+      public String readLine() {
+        return "1";
+      }
+    });
+    var tree = new Metrics();
+    Console.coalesce(Todo.printMenu()).eval(context, tree);
+    var compiled = new Metrics();
+    check(Todo.MENU instanceof Compiled && Todo.MENU.eval(context, compiled) == 1, "compiled menu");
+    for (var metrics : List.of(tree.snapshot(), compiled.snapshot())) {
+      check(metrics.count(Console.WriteLine.class) == 1 && metrics.count(Console.ReadLine.class) == 1
+          && metrics.count(Compiled.class) == 0, "instructions of the menu");
+    }
+    check(tree.snapshot().binds() == compiled.snapshot().binds(), "binds of the menu");
+  }
+
+  // a Par used to fail eval with a CompletionException instead of the failure of its program
+  static void parEvalThrowsTheFailure() {
+    Program.Dsl<Void, Void> failing = _ -> {
+      throw new IllegalStateException("failed");
+    };
+    var par = Program.parTraverse(List.of(failing, Program.done(null)));
+    var failure = fails(IllegalStateException.class, () -> par.eval(null), "par should fail");
+    check(failure.getMessage().equals("failed"), "own exception");
+  }
+
+  // an Error thrown by a handler used to leave the future of evalAsync pending forever
+  static void errorFailsEvalAsync() {
+    Program.Dsl<Void, Void> broken = _ -> {
+      throw new Error("broken");
+    };
+    var result = broken.andThen(Program.done(1)).evalAsync(null);
+    var failure = fails(ExecutionException.class, () -> result.get(1, TimeUnit.SECONDS), "evalAsync should fail");
+    check(failure.getCause() instanceof Error, "error");
+  }
+
+  // the rest of a program used to run on the thread that completed the future it waited for
+  static void resumesOnTheExecutor() throws InterruptedException, ExecutionException {
+    var waiting = new CountDownLatch(1);
+    var later = new CompletableFuture<Void>();
+    Program.Dsl<Void, Void> pending = new Program.Dsl<>() {
+      @Override
+      public Void handle(Void state) {
+        return later.join();
+      }
+
+      @Override
+      public CompletableFuture<Void> handleAsync(Void state) {
+        waiting.countDown();
+        return later;
+      }
+    };
+    Program.Dsl<Void, Boolean> onVirtualThread = _ -> Thread.currentThread().isVirtual();
+    var result = pending.andThen(onVirtualThread).evalAsync(null);
+    waiting.await();
+    Thread.sleep(10);
+    later.complete(null);
+    check(result.get(), "resumed on a virtual thread");
+  }
+
+  // a value read before an invalidation used to be cached after it
+  static void memoizeSkipsStaleValues() {
+    var cache = Cache.<Integer, String>lru(10);
+    Program.Dsl<Void, String> racing = _ -> {
+      cache.invalidate(1);
+      return "stale";
+    };
+    check(racing.memoize(1, cache).eval(null).equals("stale"), "memoized value");
+    check(cache.get(1).isEmpty(), "stale value not cached");
+    check(Program.<Void, String>done("fresh").memoize(1, cache).eval(null).equals("fresh")
+        && cache.get(1).equals(Optional.of("fresh")), "fresh value cached");
+  }
+
+  static void main() throws InterruptedException, ExecutionException {
+    recursiveProgramsRunInConstantStack();
+    coalesceDeepChain();
+    compileDeepChain();
+    compiledProgramsKeepMetrics();
+    parStopsOnFailure();
+    parEvalThrowsTheFailure();
+    errorFailsEvalAsync();
+    resumesOnTheExecutor();
+    memoizeSkipsStaleValues();
+    System.console().println("ok");
+  }
+}
@@ -0,0 +1,55 @@
+package program;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import bench.Bench;
+
+/*
+ * replays a recorded Todo session through the real Todo.loop(), each session
+ * on its own repository so every replay does the same work.
+ */
+final class ReplayBenchmark {
+
+  static final Program<Todo.Context, Void> SESSION =
+    Console.<Todo.Context>writeLine("Welcome to TODO manager").andThen(Todo.loop());
+
+  static Path record(Path directory, int todos) throws IOException {
+    var input = new ArrayList<String>();
+    for (int id = 0; id < todos; id++) {
+      input.addAll(List.of("1", String.valueOf(id), "todo number " + id));
+    }
+    input.add("2");
+    for (int id = 0; id < todos; id += 2) {
+      input.addAll(List.of("3", String.valueOf(id), "6", String.valueOf(id), "4", String.valueOf(id)));
+    }
+    input.add("2");
+    input.add("7");
+    return Files.write(directory.resolve("session-" + todos + ".txt"), input);
+  }
+
+  static int replay(ReplayConsole console) {
+    console.reset();
+    SESSION.eval(new Todo.Context(new Todo.InMemory(), console));
+    return console.output().length();
+  }
+
+  static void main(String... args) throws IOException {
+    var directory = Files.createTempDirectory("todo-replay");
+    try {
+      var cores = Runtime.getRuntime().availableProcessors();
+      for (var todos : new int[] { 1, 10, 100 }) {
+        var recording = ReplayConsole.Recording.open(record(directory, todos));
+        var consoles = ThreadLocal.withInitial(() -> new ReplayConsole(recording));
+        for (int threads = 1; threads <= cores; threads *= 2) {
+          Bench.run("replay " + recording.lines() + " input lines", threads, () -> replay(consoles.get()));
+        }
+      }
+    } finally {
+      DurabilityBenchmark.delete(directory);
+    }
+  }
+}
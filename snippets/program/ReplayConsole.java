@@ -0,0 +1,94 @@
+package program;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/*
+ * plays back the input of a recorded session and keeps what the program
+ * writes. A console can be reset and reused, and any number of consoles can
+ * share one recording.
+ */
+final class ReplayConsole implements Console.Service {
+
+  /*
+   * the file is mapped once and only split into line offsets; the bytes of a
+   * line are read when the program asks for it
+   */
+  record Recording(ByteBuffer input, int[] starts, int[] ends) {
+
+    static Recording open(Path path) throws IOException {
+      try (var channel = FileChannel.open(path)) {
+        var input = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        var starts = new int[16];
+        var ends = new int[16];
+        var lines = 0;
+        var start = 0;
+        var limit = input.limit();
+        for (int i = 0; i <= limit; i++) {
+          if (i < limit && input.get(i) != '\n') {
+            continue;
+          }
+          if (i == limit && start == limit) {
+            break;
+          }
+          if (lines == starts.length) {
+            starts = Arrays.copyOf(starts, lines * 2);
+            ends = Arrays.copyOf(ends, lines * 2);
+          }
+          starts[lines] = start;
+          ends[lines++] = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+          start = i + 1;
+        }
+        return new Recording(input, Arrays.copyOf(starts, lines), Arrays.copyOf(ends, lines));
+      }
+    }
+
+    int lines() {
+      return starts.length;
+    }
+  }
+
+  private final Recording recording;
+  private final StringBuilder output = new StringBuilder();
+  private byte[] line = new byte[128];
+  private int next;
+
+  ReplayConsole(Recording recording) {
+    this.recording = recording;
+  }
+
+  @Override
+  public void writeLine(String line) {
+    output.append(line).append('\n');
+  }
+
+  @Override
+  public String readLine() {
+    if (next == recording.lines()) {
+      throw new UncheckedIOException(new EOFException("end of recording"));
+    }
+    var start = recording.starts()[next];
+    var length = recording.ends()[next++] - start;
+    if (line.length < length) {
+      line = new byte[Math.max(length, line.length * 2)];
+    }
+    recording.input().get(start, line, 0, length);
+    return new String(line, 0, length, UTF_8);
+  }
+
+  CharSequence output() {
+    return output;
+  }
+
+  void reset() {
+    output.setLength(0);
+    next = 0;
+  }
+}
@@ -0,0 +1,126 @@
+package program;
+
+import static program.Todo.State.NOT_COMPLETED;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+import bench.Bench;
+import program.Todo.TodoEntity;
+
+final class RepositoryBenchmark {
+
+  static final int TODOS = 10_000;
+
+  record Locked(Todo.Repository repository) implements Todo.Repository {
+
+    @Override
+    public synchronized void create(TodoEntity todo) {
+      repository.create(todo);
+    }
+
+    @Override
+    public synchronized void update(int id, UnaryOperator<TodoEntity> update) {
+      repository.update(id, update);
+    }
+
+    @Override
+    public synchronized Optional<TodoEntity> find(int id) {
+      return repository.find(id);
+    }
+
+    @Override
+    public synchronized List<TodoEntity> findAll() {
+      return repository.findAll();
+    }
+
+    @Override
+    public synchronized void delete(int id) {
+      repository.delete(id);
+    }
+
+    @Override
+    public synchronized void deleteAll() {
+      repository.deleteAll();
+    }
+  }
+
+  static <R extends Todo.Repository> R fill(R repository, int todos) {
+    for (int id = 0; id < todos; id++) {
+      repository.create(new TodoEntity(id, "0", NOT_COMPLETED));
+    }
+    return repository;
+  }
+
+  static TodoEntity increment(TodoEntity todo) {
+    return new TodoEntity(todo.id(), String.valueOf(Integer.parseInt(todo.title()) + 1), todo.state());
+  }
+
+  static Object mixed(Todo.Repository repository) {
+    var random = ThreadLocalRandom.current();
+    var id = random.nextInt(TODOS);
+    if (random.nextInt(10) == 0) {
+      repository.update(id, RepositoryBenchmark::increment);
+      return repository;
+    }
+    return repository.find(id);
+  }
+
+  /*
+   * mostly reads, some of them through a consistent view of every todo
+   */
+  static Object scanning(Todo.Repository repository) {
+    var random = ThreadLocalRandom.current();
+    var id = random.nextInt(TODOS);
+    return switch (random.nextInt(100)) {
+      case 0 -> repository.findAll().size();
+      case 1, 2, 3, 4, 5, 6, 7, 8, 9 -> {
+        repository.update(id, RepositoryBenchmark::increment);
+        yield repository;
+      }
+      default -> repository.find(id);
+    };
+  }
+
+  static long stress(Todo.Repository repository, int threads, int increments) throws InterruptedException {
+    fill(repository, 1);
+    var workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = Thread.ofPlatform().start(() -> {
+        for (int j = 0; j < increments; j++) {
+          repository.update(0, RepositoryBenchmark::increment);
+        }
+      });
+    }
+    for (var worker : workers) {
+      worker.join();
+    }
+    var expected = (long) threads * increments;
+    var actual = Long.parseLong(repository.find(0).orElseThrow().title());
+    return expected - actual;
+  }
+
+  static void main() throws InterruptedException {
+    var cores = Runtime.getRuntime().availableProcessors();
+
+    var writers = Math.max(8, cores);
+    System.console().println("lost updates with " + writers + " threads: "
+        + stress(new ConcurrentRepository(), writers, 100_000));
+    System.console().println("lost updates with " + writers + " threads (HAMT): "
+        + stress(new HamtRepository(), writers, 100_000));
+
+    var locked = fill(new Locked(new Todo.InMemory()), TODOS);
+    var concurrent = fill(new ConcurrentRepository(), TODOS);
+    var hamt = fill(new HamtRepository(), TODOS);
+    for (int threads = 1; threads <= cores; threads *= 2) {
+      Bench.run("locked HashMap 90% reads", threads, () -> mixed(locked));
+      Bench.run("ConcurrentRepository 90% reads", threads, () -> mixed(concurrent));
+      Bench.run("HamtRepository 90% reads", threads, () -> mixed(hamt));
+      Bench.run("locked HashMap 1% findAll", threads, () -> scanning(locked));
+      Bench.run("ConcurrentRepository 1% findAll", threads, () -> scanning(concurrent));
+      Bench.run("HamtRepository 1% findAll", threads, () -> scanning(hamt));
+    }
+  }
+}
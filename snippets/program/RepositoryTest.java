@@ -0,0 +1,314 @@
+package program;
+
+import static check.Checks.check;
+import static check.Checks.fails;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static program.Todo.State.COMPLETED;
+import static program.Todo.State.NOT_COMPLETED;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import program.Todo.TodoEntity;
+
+/*
+ * the repositories and the decorators that index, cache and listen to them
+ */
+final class RepositoryTest {
+
+  // the replaced title used to be left out of the size of the compacted arena
+  static void updateLargeTitle() {
+    var repository = new IntMapRepository();
+    var title = "x".repeat(10_000);
+    repository.create(new TodoEntity(1, title, NOT_COMPLETED));
+    repository.create(new TodoEntity(2, "small", NOT_COMPLETED));
+    repository.update(1, todo -> new TodoEntity(1, todo.title() + "y", COMPLETED));
+    check(repository.find(1).equals(Optional.of(new TodoEntity(1, title + "y", COMPLETED))), "updated title");
+    check(repository.find(2).equals(Optional.of(new TodoEntity(2, "small", NOT_COMPLETED))), "other title");
+  }
+
+  // fails the first createAll calls, like a backend that is briefly down
+  record Flaky(Todo.Repository repository, AtomicInteger failures) implements Todo.Repository {
+
+    @Override
+    public void create(TodoEntity todo) {
+      repository.create(todo);
+    }
+
+    @Override
+    public void createAll(List<TodoEntity> todos) {
+      if (failures.getAndDecrement() > 0) {
+        throw new IllegalStateException("backend down");
+      }
+      repository.createAll(todos);
+    }
+
+    @Override
+    public void update(int id, UnaryOperator<TodoEntity> update) {
+      repository.update(id, update);
+    }
+
+    @Override
+    public Optional<TodoEntity> find(int id) {
+      return repository.find(id);
+    }
+
+    @Override
+    public List<TodoEntity> findAll() {
+      return repository.findAll();
+    }
+
+    @Override
+    public void delete(int id) {
+      repository.delete(id);
+    }
+
+    @Override
+    public void deleteAll() {
+      repository.deleteAll();
+    }
+  }
+
+  // counts the writes that reach the backend, a batch as one
+  record Counted(Todo.Repository repository, AtomicInteger writes) implements Todo.Repository {
+
+    @Override
+    public void create(TodoEntity todo) {
+      writes.incrementAndGet();
+      repository.create(todo);
+    }
+
+    @Override
+    public void createAll(List<TodoEntity> todos) {
+      writes.incrementAndGet();
+      repository.createAll(todos);
+    }
+
+    @Override
+    public void update(int id, UnaryOperator<TodoEntity> update) {
+      writes.incrementAndGet();
+      repository.update(id, update);
+    }
+
+    @Override
+    public void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+      writes.incrementAndGet();
+      repository.updateAll(updates);
+    }
+
+    @Override
+    public Optional<TodoEntity> find(int id) {
+      return repository.find(id);
+    }
+
+    @Override
+    public List<TodoEntity> findAll() {
+      return repository.findAll();
+    }
+
+    @Override
+    public void delete(int id) {
+      writes.incrementAndGet();
+      repository.delete(id);
+    }
+
+    @Override
+    public void deleteMany(Collection<Integer> ids) {
+      writes.incrementAndGet();
+      repository.deleteMany(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+      writes.incrementAndGet();
+      repository.deleteAll();
+    }
+  }
+
+  // the decorators used to split coalesced batches into one backend write per todo
+  static void decoratorsKeepBatches() {
+    Program<Todo.Repository, Void> program = Program.done(null);
+    for (int id = 0; id < 10; id++) {
+      program = program.andThen(Todo.create(new TodoEntity(id, "todo " + id, NOT_COMPLETED)));
+    }
+    for (int id = 0; id < 5; id++) {
+      program = program.andThen(Todo.update(id, todo -> todo.withState(COMPLETED)));
+    }
+    for (int id = 5; id < 8; id++) {
+      program = program.andThen(Todo.deleteOne(id));
+    }
+    var batched = Todo.coalesce(program);
+    List<Function<Todo.Repository, Todo.Repository>> decorators = List.of(
+        IndexedRepository::new, backend -> CachingRepository.writeThrough(backend, Cache.lru(100)));
+    for (var decorator : decorators) {
+      var backend = new Counted(new ConcurrentRepository(), new AtomicInteger());
+      var repository = decorator.apply(backend);
+      batched.eval(repository);
+      check(backend.writes().get() == 3, "one backend write per batch");
+      check(repository.findByState(COMPLETED).size() == 5 && repository.findByState(NOT_COMPLETED).size() == 2,
+          "batches applied");
+      check(repository.find(0).get().state() == COMPLETED && repository.find(5).isEmpty(), "batches cached");
+    }
+  }
+
+  // reads used to wait for the monitor of a write in progress
+  static void indexedReadsDontWaitForWrites() throws Exception {
+    var backend = new ListeningRepository(new ConcurrentRepository());
+    var indexed = new IndexedRepository(backend);
+    indexed.create(new TodoEntity(1, "first", NOT_COMPLETED));
+    var writing = new CompletableFuture<Void>();
+    var release = new CompletableFuture<Void>();
+    backend.onWrite(new Todo.Listener() {
+      @Override
+      public void written(int id) {
+        writing.complete(null);
+        release.join();
+      }
+
+      @Override
+      public void cleared() {}
+    });
+    // platform threads, a virtual thread blocked in a monitor would hold its carrier
+    var writer = Thread.ofPlatform().start(() -> indexed.create(new TodoEntity(2, "second", COMPLETED)));
+    try {
+      writing.join();
+      var read = CompletableFuture.supplyAsync(() -> indexed.findByState(NOT_COMPLETED), Thread.ofPlatform()::start);
+      check(read.get(1, TimeUnit.SECONDS).size() == 1, "read during a write");
+    } finally {
+      release.complete(null);
+    }
+    writer.join();
+    check(indexed.findByState(COMPLETED).size() == 1 && indexed.findByTitlePrefix("s").size() == 1, "write indexed");
+  }
+
+  // a failed flush used to drop its batch and cancel the periodic flusher
+  static void failedFlushKeepsWrites() throws InterruptedException {
+    var backend = new Flaky(new Todo.InMemory(), new AtomicInteger(3));
+    try (var repository = CachingRepository.writeBehind(backend, Cache.lru(10), Duration.ofMillis(10), 100)) {
+      repository.create(new TodoEntity(1, "first", NOT_COMPLETED));
+      fails(IllegalStateException.class, repository::flush, "flush should fail");
+      check(repository.stats().pendingWrites() == 1, "write requeued");
+      repository.create(new TodoEntity(2, "second", NOT_COMPLETED));
+      for (int i = 0; i < 100 && backend.find(2).isEmpty(); i++) {
+        Thread.sleep(10);
+      }
+      check(backend.find(1).isPresent() && backend.find(2).isPresent(), "scheduled flush retried");
+    }
+  }
+
+  // a record cut short by a crash used to be replayed as garbage
+  static void tornRecordIsTruncated() throws IOException {
+    var directory = Files.createTempDirectory("todo-log");
+    try {
+      try (var log = new LogRepository(directory)) {
+        for (var title : List.of("a", "b", "c")) {
+          log.create(new TodoEntity(title.charAt(0), title, NOT_COMPLETED));
+        }
+      }
+      // every record is a header, a type, an id, a state, a length and a one byte title
+      var record = 2 * Integer.BYTES + 1 + Integer.BYTES + 1 + Integer.BYTES + 1;
+      try (var segment = FileChannel.open(directory.resolve("segment-00000000.log"), WRITE)) {
+        segment.write(ByteBuffer.wrap(new byte[] { 'x' }), 2 * record + record - 1);
+      }
+      try (var log = new LogRepository(directory)) {
+        check(log.findAll().size() == 2 && log.find('c').isEmpty(), "torn record dropped");
+        log.create(new TodoEntity('d', "d", NOT_COMPLETED));
+      }
+      try (var log = new LogRepository(directory)) {
+        check(log.findAll().size() == 3 && log.find('d').isPresent(), "appends after the truncation");
+      }
+    } finally {
+      DurabilityBenchmark.delete(directory);
+    }
+  }
+
+  // writes used to invalidate memoized reads only through the Context that made them
+  static void writesFromAnyContextInvalidate() {
+    var repository = new ListeningRepository(new ConcurrentRepository());
+    var cache = Cache.<Integer, Optional<TodoEntity>>lru(10);
+    repository.onWrite(Todo.Listener.invalidate(cache));
+    var reader = new Todo.Context(repository, new Console.Service() {});
+    var writer = new Todo.Context(repository, new Console.Service() {});
+    repository.create(new TodoEntity(1, "first", NOT_COMPLETED));
+    check(Todo.<Todo.Context>findOne(1, cache).eval(reader).isPresent(), "found");
+    Todo.<Todo.Context>update(1, todo -> todo.withState(COMPLETED)).eval(writer);
+    check(Todo.<Todo.Context>findOne(1, cache).eval(reader).get().state() == COMPLETED,
+        "updated through the other context");
+    repository.createAll(List.of(new TodoEntity(1, "replaced", NOT_COMPLETED)));
+    check(Todo.<Todo.Context>findOne(1, cache).eval(reader).get().title().equals("replaced"), "replaced by a batch");
+  }
+
+  // LFU evicts the least frequently used key without scanning every entry
+  static void lfuEvictsTheLeastUsed() {
+    var cache = Cache.<String, Integer>lfu(2);
+    cache.put("a", 1);
+    cache.get("a");
+    cache.put("b", 2);
+    cache.put("c", 3);
+    check(cache.get("a").isPresent() && cache.get("b").isEmpty() && cache.get("c").isPresent(), "b evicted");
+    cache.get("c");
+    cache.get("c");
+    cache.put("d", 4);
+    check(cache.get("a").isEmpty() && cache.get("c").isPresent(), "a evicted");
+  }
+
+  static List<Integer> listIds(Todo.Repository repository, int size) {
+    var ids = new ArrayList<Integer>();
+    var page = repository.findPage(OptionalInt.empty(), size);
+    while (true) {
+      page.todos().forEach(todo -> ids.add(todo.id()));
+      if (page.next().isEmpty()) {
+        return ids;
+      }
+      page = repository.findPage(page.next(), size);
+    }
+  }
+
+  // the first page used to start after Integer.MIN_VALUE, which left that id out
+  static void pagesListEveryId() {
+    List<Supplier<Todo.Repository>> repositories = List.of(
+        Todo.InMemory::new, ConcurrentRepository::new, IntMapRepository::new, HamtRepository::new);
+    var ids = List.of(Integer.MIN_VALUE, -1, 0, 5, Integer.MAX_VALUE);
+    for (var factory : repositories) {
+      var repository = factory.get();
+      for (var id : ids.reversed()) {
+        repository.create(new TodoEntity(id, "todo " + id, NOT_COMPLETED));
+      }
+      check(listIds(repository, 2).equals(ids), "every id listed");
+      var first = repository.findPage(OptionalInt.empty(), 2);
+      repository.delete(0);
+      repository.create(new TodoEntity(3, "added", NOT_COMPLETED));
+      check(repository.findPage(first.next(), 10).todos().stream().map(TodoEntity::id).toList()
+          .equals(List.of(3, 5, Integer.MAX_VALUE)), "writes between pages");
+      repository.deleteAll();
+      check(listIds(repository, 2).isEmpty(), "cleared");
+    }
+  }
+
+  static void main() throws Exception {
+    updateLargeTitle();
+    failedFlushKeepsWrites();
+    tornRecordIsTruncated();
+    writesFromAnyContextInvalidate();
+    lfuEvictsTheLeastUsed();
+    pagesListEveryId();
+    decoratorsKeepBatches();
+    indexedReadsDontWaitForWrites();
+    System.console().println("ok");
+  }
+}
@@ -0,0 +1,108 @@
+package program;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * local load generator: every session creates, finds, completes and deletes
+ * its own todo, timing each command until the server asks for the next input.
+ */
+final class ServerBenchmark {
+
+  static final String MENU = "7. Exit";
+
+  record Client(Socket socket, BufferedReader reader, OutputStream writer, Metrics.Histogram latency) {
+
+    Client(int port, Metrics.Histogram latency) throws IOException {
+      this(new Socket(InetAddress.getLoopbackAddress(), port), latency);
+    }
+
+    private Client(Socket socket, Metrics.Histogram latency) throws IOException {
+      this(socket, new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8)),
+          socket.getOutputStream(), latency);
+      socket.setTcpNoDelay(true);
+    }
+
+    void await(String prompt) throws IOException {
+      String line;
+      do {
+        line = reader.readLine();
+        if (line == null) {
+          throw new IOException("connection closed while waiting for " + prompt);
+        }
+      } while (!line.equals(prompt));
+    }
+
+    void command(String input, String prompt) throws IOException {
+      var start = System.nanoTime();
+      writer.write((input + "\n").getBytes(UTF_8));
+      writer.flush();
+      await(prompt);
+      latency.record(System.nanoTime() - start);
+    }
+
+    void session(int id) throws IOException {
+      try (socket) {
+        await(MENU);
+        command("1", "Enter id");
+        command(String.valueOf(id), "Enter title");
+        command("todo number " + id, MENU);
+        command("3", "Enter id");
+        command(String.valueOf(id), MENU);
+        command("6", "Enter id");
+        command(String.valueOf(id), MENU);
+        command("4", "Enter id");
+        command(String.valueOf(id), MENU);
+        command("7", "Bye!");
+      }
+    }
+  }
+
+  static void run(int sessions, int clients) throws IOException {
+    var latency = new Metrics.Histogram();
+    var ids = new AtomicInteger();
+    var permits = new Semaphore(clients);
+    try (var server = new TodoServer(0, new ConcurrentRepository());
+         var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      var start = System.nanoTime();
+      for (int i = 0; i < sessions; i++) {
+        permits.acquireUninterruptibly();
+        executor.execute(() -> {
+          try {
+            new Client(server.port(), latency).session(ids.getAndIncrement());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          } finally {
+            permits.release();
+          }
+        });
+      }
+      permits.acquireUninterruptibly(clients);
+      var elapsed = Duration.ofNanos(System.nanoTime() - start);
+      var snapshot = latency.snapshot();
+      System.console().println(String.format(
+          "%5d clients %8d sessions %10.1f sessions/s  command p50 %6d us p99 %6d us max %6d us",
+          clients, sessions, sessions * 1e9 / elapsed.toNanos(),
+          snapshot.percentile(50) / 1_000, snapshot.percentile(99) / 1_000, snapshot.maxNanos() / 1_000));
+    }
+  }
+
+  static void main(String... args) throws IOException {
+    var sessions = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    run(sessions / 10, 1);
+    for (var clients : new int[] { 1, 10, 100, 1_000 }) {
+      run(sessions, clients);
+    }
+  }
+}
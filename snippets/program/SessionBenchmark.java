@@ -0,0 +1,59 @@
+package program;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+final class SessionBenchmark {
+
+  record Think(Duration duration) implements Program.Dsl<Void, Void> {
+    @Override
+    public Void handle(Void state) {
+      try {
+        Thread.sleep(duration);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return null;
+    }
+  }
+
+  static Program<Void, Integer> session(int steps) {
+    if (steps == 0) {
+      return Program.done(0);
+    }
+    return new Think(Duration.ofMillis(10)).andThen(_ -> session(steps - 1));
+  }
+
+  static void main(String... args) {
+    var sessions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+    var program = session(10);
+
+    try (var platform = Executors.newFixedThreadPool(200)) {
+      run("eval thread-per-session (200 threads)", sessions, platform,
+          executor -> CompletableFuture.supplyAsync(() -> program.eval(null), executor));
+    }
+    try (var virtual = Executors.newVirtualThreadPerTaskExecutor()) {
+      run("evalAsync virtual threads", sessions, virtual,
+          executor -> program.evalAsync(null, executor));
+    }
+  }
+
+  interface Session {
+    CompletableFuture<Integer> start(ExecutorService executor);
+  }
+
+  static void run(String name, int sessions, ExecutorService executor, Session session) {
+    var start = System.nanoTime();
+    var futures = new ArrayList<CompletableFuture<Integer>>(sessions);
+    for (int i = 0; i < sessions; i++) {
+      futures.add(session.start(executor));
+    }
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+    var elapsed = Duration.ofNanos(System.nanoTime() - start);
+    System.console().println(String.format("%-40s %8d sessions in %6d ms, %10.1f sessions/s",
+        name, sessions, elapsed.toMillis(), sessions * 1000.0 / Math.max(1, elapsed.toMillis())));
+  }
+}
@@ -1,6 +1,6 @@
 package program;
 
-import static java.util.stream.Collectors.joining;
+import static java.util.Comparator.comparingInt;
 import static program.Console.prompt;
 import static program.Console.readLine;
 import static program.Console.writeLine;
@@ -8,10 +8,19 @@ import static program.Program.zip;
 import static program.Todo.State.COMPLETED;
 import static program.Todo.State.NOT_COMPLETED;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 
 sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
@@ -23,6 +32,85 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
     List<TodoEntity> findAll();
     void delete(int id);
     void deleteAll();
+
+    default void createAll(List<TodoEntity> todos) {
+      todos.forEach(this::create);
+    }
+
+    default void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+      updates.forEach(this::update);
+    }
+
+    default void deleteMany(Collection<Integer> ids) {
+      ids.forEach(this::delete);
+    }
+
+    default void forEach(Consumer<TodoEntity> action) {
+      findAll().forEach(action);
+    }
+
+    default List<TodoEntity> findByState(State state) {
+      var result = new ArrayList<TodoEntity>();
+      forEach(todo -> {
+        if (todo.state() == state) {
+          result.add(todo);
+        }
+      });
+      return List.copyOf(result);
+    }
+
+    default List<TodoEntity> findByTitlePrefix(String prefix) {
+      var result = new ArrayList<TodoEntity>();
+      forEach(todo -> {
+        if (todo.title().startsWith(prefix)) {
+          result.add(todo);
+        }
+      });
+      return List.copyOf(result);
+    }
+
+    // after is the id the page starts after, empty for the first page
+    default Page findPage(OptionalInt after, int size) {
+      if (size < 1) {
+        throw new IllegalArgumentException("size must be positive: " + size);
+      }
+      var largest = new PriorityQueue<TodoEntity>(size + 1, comparingInt(TodoEntity::id).reversed());
+      forEach(todo -> {
+        if (after.isPresent() && todo.id() <= after.getAsInt() || (largest.size() > size && todo.id() >= largest.peek().id())) {
+          return;
+        }
+        largest.offer(todo);
+        if (largest.size() > size + 1) {
+          largest.poll();
+        }
+      });
+      var todos = new ArrayList<>(largest);
+      todos.sort(comparingInt(TodoEntity::id));
+      if (todos.size() > size) {
+        todos.remove(size);
+        return new Page(List.copyOf(todos), OptionalInt.of(todos.getLast().id()));
+      }
+      return new Page(List.copyOf(todos), OptionalInt.empty());
+    }
+  }
+
+  interface Listener {
+    void written(int id);
+    void cleared();
+
+    static Listener invalidate(Cache<Integer, ?> cache) {
+      return new Listener() {
+        @Override
+        public void written(int id) {
+          cache.invalidate(id);
+        }
+
+        @Override
+        public void cleared() {
+          cache.invalidateAll();
+        }
+      };
+    }
   }
 
   enum State {
@@ -35,12 +123,32 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
     }
   }
 
+  record Page(List<TodoEntity> todos, OptionalInt next) {}
+
   record Create(TodoEntity todo) implements Todo<Void> {}
   record Update(int id, UnaryOperator<TodoEntity> update) implements Todo<Void> {}
   record FindOne(int id) implements Todo<Optional<TodoEntity>> {}
   record FindAll() implements Todo<List<TodoEntity>> {}
+  record FindPage(OptionalInt after, int size) implements Todo<Page> {}
+  record FindByState(State state) implements Todo<List<TodoEntity>> {}
+  record FindByTitlePrefix(String prefix) implements Todo<List<TodoEntity>> {}
   record DeleteOne(int id) implements Todo<Void> {}
   record DeleteAll() implements Todo<Void> {}
+  record CreateAll(List<TodoEntity> todos) implements Todo<Void> {}
+  record UpdateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) implements Todo<Void> {}
+  record DeleteMany(Set<Integer> ids) implements Todo<Void> {}
+
+  int PAGE_SIZE = 100;
+
+  Program<Context, Integer> MENU = Console.coalesce(printMenu()).compile();
+  Program<Context, Void> LOOP = Program.lazy(() -> MENU.andThen(Todo::executeAction));
+  Program<Context, Void> CREATE = Program.lazy(Todo::createTodo);
+  Program<Context, Void> LIST = Program.lazy(Todo::findAllTodos);
+  Program<Context, Void> FIND = Program.lazy(Todo::findTodo);
+  Program<Context, Void> DELETE = Program.lazy(Todo::deleteTodo);
+  Program<Context, Void> CLEAR = Program.lazy(Todo::deleteAllTodos);
+  Program<Context, Void> COMPLETE = Program.lazy(Todo::markCompleted);
+  Program<Context, Void> EXIT = writeLine("Bye!");
 
   @SuppressWarnings("unchecked")
   static <S extends Repository> Program<S, Void> create(TodoEntity todo) {
@@ -57,11 +165,35 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
     return (Program<S, Optional<TodoEntity>>) new FindOne(id);
   }
 
+  static <S extends Repository> Program<S, Optional<TodoEntity>> findOne(
+      int id, Cache<Integer, Optional<TodoEntity>> cache) {
+    return Todo.<S>findOne(id).memoize(id, cache);
+  }
+
   @SuppressWarnings("unchecked")
   static <S extends Repository> Program<S, List<TodoEntity>> findAll() {
     return (Program<S, List<TodoEntity>>) new FindAll();
   }
 
+  static <S extends Repository> Program<S, Page> findPage(int size) {
+    return findPage(OptionalInt.empty(), size);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <S extends Repository> Program<S, Page> findPage(OptionalInt after, int size) {
+    return (Program<S, Page>) new FindPage(after, size);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <S extends Repository> Program<S, List<TodoEntity>> findByState(State state) {
+    return (Program<S, List<TodoEntity>>) new FindByState(state);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <S extends Repository> Program<S, List<TodoEntity>> findByTitlePrefix(String prefix) {
+    return (Program<S, List<TodoEntity>>) new FindByTitlePrefix(prefix);
+  }
+
   @SuppressWarnings("unchecked")
   static <S extends Repository> Program<S, Void> deleteOne(int id) {
     return (Program<S, Void>) new DeleteOne(id);
@@ -72,6 +204,83 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
     return (Program<S, Void>) new DeleteAll();
   }
 
+  @SuppressWarnings("unchecked")
+  static <S extends Repository> Program<S, Void> createAll(List<TodoEntity> todos) {
+    return (Program<S, Void>) new CreateAll(List.copyOf(todos));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <S extends Repository> Program<S, Void> updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+    return (Program<S, Void>) new UpdateAll(Collections.unmodifiableMap(new LinkedHashMap<>(updates)));
+  }
+
+  @SuppressWarnings("unchecked")
+  static <S extends Repository> Program<S, Void> deleteMany(Collection<Integer> ids) {
+    return (Program<S, Void>) new DeleteMany(Collections.unmodifiableSet(new LinkedHashSet<>(ids)));
+  }
+
+  static <S extends Repository, T> Program<S, T> coalesce(Program<S, T> program) {
+    return Program.coalesce(program, Todo::batchable, Todo::batch);
+  }
+
+  private static boolean batchable(Program<?, ?> first, Program<?, ?> second) {
+    return switch (first) {
+      case Create _, CreateAll _ -> second instanceof Create || second instanceof CreateAll;
+      case Update _, UpdateAll _ -> second instanceof Update || second instanceof UpdateAll;
+      case DeleteOne _, DeleteMany _ -> second instanceof DeleteOne || second instanceof DeleteMany;
+      default -> false;
+    };
+  }
+
+  /*
+   * a run of writes of the same kind becomes one batch instruction, in order;
+   * updates of the same todo are composed
+   */
+  @SuppressWarnings("unchecked")
+  private static <S> Program<S, ?> batch(List<Program<S, ?>> run) {
+    Todo<Void> batch = switch (run.getFirst()) {
+      case Create _, CreateAll _ -> {
+        var todos = new ArrayList<TodoEntity>(run.size());
+        for (var program : run) {
+          switch (program) {
+            case Create(var todo) -> todos.add(todo);
+            case CreateAll(var all) -> todos.addAll(all);
+            default -> throw new IllegalArgumentException(program.toString());
+          }
+        }
+        yield new CreateAll(Collections.unmodifiableList(todos));
+      }
+      case Update _, UpdateAll _ -> {
+        var updates = new LinkedHashMap<Integer, UnaryOperator<TodoEntity>>();
+        for (var program : run) {
+          switch (program) {
+            case Update(var id, var update) -> compose(updates, id, update);
+            case UpdateAll(var all) -> all.forEach((id, update) -> compose(updates, id, update));
+            default -> throw new IllegalArgumentException(program.toString());
+          }
+        }
+        yield new UpdateAll(Collections.unmodifiableMap(updates));
+      }
+      case DeleteOne _, DeleteMany _ -> {
+        var ids = new LinkedHashSet<Integer>();
+        for (var program : run) {
+          switch (program) {
+            case DeleteOne(var id) -> ids.add(id);
+            case DeleteMany(var all) -> ids.addAll(all);
+            default -> throw new IllegalArgumentException(program.toString());
+          }
+        }
+        yield new DeleteMany(Collections.unmodifiableSet(ids));
+      }
+      default -> throw new IllegalArgumentException(run.getFirst().toString());
+    };
+    return (Program<S, ?>) batch;
+  }
+
+  private static void compose(Map<Integer, UnaryOperator<TodoEntity>> updates, int id, UnaryOperator<TodoEntity> next) {
+    updates.merge(id, next, (first, second) -> todo -> second.apply(first.apply(todo)));
+  }
+
   @Override
   @SuppressWarnings("unchecked")
   default T handle(Repository repository) {
@@ -86,6 +295,9 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
       }
       case FindOne(int id) -> repository.find(id);
       case FindAll _ -> repository.findAll();
+      case FindPage(OptionalInt after, int size) -> repository.findPage(after, size);
+      case FindByState(State state) -> repository.findByState(state);
+      case FindByTitlePrefix(String prefix) -> repository.findByTitlePrefix(prefix);
       case DeleteOne(int id) -> {
         repository.delete(id);
         yield null;
@@ -94,6 +306,18 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
         repository.deleteAll();
         yield null;
       }
+      case CreateAll(List<TodoEntity> todos) -> {
+        repository.createAll(todos);
+        yield null;
+      }
+      case UpdateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) -> {
+        repository.updateAll(updates);
+        yield null;
+      }
+      case DeleteMany(Set<Integer> ids) -> {
+        repository.deleteMany(ids);
+        yield null;
+      }
     };
   }
 
@@ -112,14 +336,14 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
 
   static Program<Context, Void> executeAction(int action) {
     return switch (action) {
-      case 1 -> createTodo();
-      case 2 -> findAllTodos();
-      case 3 -> findTodo();
-      case 4 -> deleteTodo();
-      case 5 -> deleteAllTodos();
-      case 6 -> markCompleted();
-      case 7 -> writeLine("Bye!");
-      default -> throw new IllegalArgumentException();
+      case 1 -> CREATE;
+      case 2 -> LIST;
+      case 3 -> FIND;
+      case 4 -> DELETE;
+      case 5 -> CLEAR;
+      case 6 -> COMPLETE;
+      case 7 -> EXIT;
+      default -> throw new IllegalArgumentException("unknown action " + action);
     };
   }
 
@@ -132,10 +356,20 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
   }
 
   static Program<Context, Void> findAllTodos() {
-    return Todo.<Context>findAll()
-      .map(list -> list.stream().map(Object::toString).collect(joining("\n")))
-      .andThen(Console::writeLine)
-      .andThen(loop());
+    return printTodos(OptionalInt.empty()).andThen(loop());
+  }
+
+  static Program<Context, Void> printTodos(OptionalInt after) {
+    return Todo.<Context>findPage(after, PAGE_SIZE).andThen(page -> {
+      Program<Context, Void> program = Program.done(null);
+      for (var todo : page.todos()) {
+        program = program.andThen(writeLine(todo.toString()));
+      }
+      if (page.next().isPresent()) {
+        return Console.coalesce(program).andThen(printTodos(page.next()));
+      }
+      return Console.coalesce(program);
+    });
   }
 
   static Program<Context, Void> deleteAllTodos() {
@@ -175,7 +409,7 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
   }
 
   static Program<Context, Void> loop() {
-    return printMenu().andThen(Todo::executeAction);
+    return LOOP;
   }
 
   static void main() {
@@ -185,19 +419,114 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
     program.eval(new Context());
   }
 
-  final class Context implements Todo.Repository {
+  final class Context implements Todo.Repository, Console.Service {
+
+    private final Repository repository;
+    private final Console.Service console;
+
+    public Context() {
+      this(new Console.Service() {});
+    }
+
+    public Context(Console.Service console) {
+      this(new InMemory(), console);
+    }
+
+    public Context(Repository repository, Console.Service console) {
+      this.repository = repository;
+      this.console = console;
+    }
+
+    @Override
+    public void writeLine(String line) {
+      console.writeLine(line);
+    }
+
+    @Override
+    public String readLine() {
+      return console.readLine();
+    }
+
+    @Override
+    public void create(TodoEntity todo) {
+      repository.create(todo);
+    }
+
+    @Override
+    public void createAll(List<TodoEntity> todos) {
+      repository.createAll(todos);
+    }
+
+    @Override
+    public void update(int id, UnaryOperator<TodoEntity> update) {
+      repository.update(id, update);
+    }
+
+    @Override
+    public void updateAll(Map<Integer, UnaryOperator<TodoEntity>> updates) {
+      repository.updateAll(updates);
+    }
+
+    @Override
+    public Optional<TodoEntity> find(int id) {
+      return repository.find(id);
+    }
+
+    @Override
+    public List<TodoEntity> findAll() {
+      return repository.findAll();
+    }
+
+    @Override
+    public void forEach(Consumer<TodoEntity> action) {
+      repository.forEach(action);
+    }
+
+    @Override
+    public List<TodoEntity> findByState(State state) {
+      return repository.findByState(state);
+    }
+
+    @Override
+    public List<TodoEntity> findByTitlePrefix(String prefix) {
+      return repository.findByTitlePrefix(prefix);
+    }
+
+    @Override
+    public Page findPage(OptionalInt after, int size) {
+      return repository.findPage(after, size);
+    }
+
+    @Override
+    public void delete(int id) {
+      repository.delete(id);
+    }
+
+    @Override
+    public void deleteMany(Collection<Integer> ids) {
+      repository.deleteMany(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+      repository.deleteAll();
+    }
+  }
+
+  final class InMemory implements Todo.Repository {
 
     private final Map<Integer, TodoEntity> repository = new HashMap<>();
+    private final PageIndex pages = new PageIndex();
 
     @Override
     public void create(TodoEntity todo) {
       repository.put(todo.id(), todo);
+      pages.add(todo.id());
     }
 
     @Override
     public void update(int id, UnaryOperator<TodoEntity> update) {
-      var todo = repository.get(id);
-      repository.put(id, update.apply(todo));
+      repository.computeIfPresent(id, (_, todo) -> update.apply(todo));
     }
 
     @Override
@@ -210,14 +539,26 @@ sealed interface Todo<T> extends Program.Dsl<Todo.Repository, T> {
       return List.copyOf(repository.values());
     }
 
+    @Override
+    public void forEach(Consumer<TodoEntity> action) {
+      repository.values().forEach(action);
+    }
+
+    @Override
+    public Page findPage(OptionalInt after, int size) {
+      return pages.page(after, size, repository::get);
+    }
+
     @Override
     public void delete(int id) {
       repository.remove(id);
+      pages.remove(id, repository::get);
     }
 
     @Override
     public void deleteAll() {
       repository.clear();
+      pages.clear(repository::get);
     }
   }
 }
@@ -0,0 +1,142 @@
+package program;
+
+import static java.lang.System.Logger.Level.DEBUG;
+import static java.lang.System.Logger.Level.WARNING;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * one virtual thread per connection: every session evaluates the blocking
+ * Todo.loop() against its own socket console and the shared repository.
+ */
+final class TodoServer implements AutoCloseable {
+
+  record SocketConsole(BufferedReader reader, Writer writer) implements Console.Service {
+
+    SocketConsole(Socket socket) throws IOException {
+      this(new BufferedReader(new InputStreamReader(socket.getInputStream(), UTF_8)),
+          new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), UTF_8)));
+    }
+
+    @Override
+    public void writeLine(String line) {
+      try {
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    @Override
+    public String readLine() {
+      try {
+        var line = reader.readLine();
+        if (line == null) {
+          throw new EOFException("connection closed");
+        }
+        return line;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private static final System.Logger LOGGER = System.getLogger(TodoServer.class.getName());
+
+  private final ServerSocket server;
+  private final Todo.Repository repository;
+  private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+  // the sockets of the live sessions, closed with the server
+  private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+
+  TodoServer(int port, Todo.Repository repository) throws IOException {
+    this.server = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+    this.repository = repository;
+    Thread.ofVirtual().name("todo-server").start(this::accept);
+  }
+
+  int port() {
+    return server.getLocalPort();
+  }
+
+  private void accept() {
+    while (!server.isClosed()) {
+      try {
+        var socket = server.accept();
+        sessions.execute(() -> session(socket));
+      } catch (IOException e) {
+        // a failed connection doesn't stop the server, only closing it does
+        if (!server.isClosed()) {
+          LOGGER.log(WARNING, "accept failed", e);
+        }
+      }
+    }
+  }
+
+  private void session(Socket socket) {
+    clients.add(socket);
+    try (socket; var console = new BufferedConsole(new SocketConsole(socket))) {
+      // close may have run before the socket was added
+      if (server.isClosed()) {
+        return;
+      }
+      socket.setTcpNoDelay(true);
+      var context = new Todo.Context(repository, console);
+      var program = Console.<Todo.Context>writeLine("Welcome to TODO manager").andThen(Todo.loop());
+      while (program != null) {
+        try {
+          program.eval(context);
+          program = null;
+        } catch (IllegalArgumentException e) {
+          // a choice or an id that isn't a number, the menu starts over
+          console.writeLine("invalid input: " + e.getMessage());
+          program = Todo.loop();
+        }
+      }
+    } catch (UncheckedIOException e) {
+      LOGGER.log(DEBUG, "client disconnected", e);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.log(WARNING, "session failed", e);
+    } finally {
+      clients.remove(socket);
+    }
+  }
+
+  /*
+   * the sessions are blocked reading their sockets, so the sockets are closed
+   * before waiting for them
+   */
+  @Override
+  public void close() throws IOException {
+    server.close();
+    for (var socket : clients) {
+      socket.close();
+    }
+    sessions.close();
+  }
+
+  static void main(String... args) throws IOException, InterruptedException {
+    var port = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+    try (var server = new TodoServer(port, new ConcurrentRepository())) {
+      System.console().println("TODO manager listening on port " + server.port());
+      Thread.currentThread().join();
+    }
+  }
+}